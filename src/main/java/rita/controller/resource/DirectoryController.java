@@ -28,19 +28,36 @@ import static rita.repository.Type.DIRECTORY;
 @Tag(name = "Directories", description = "Методы для работы с папками")
 public class DirectoryController {
 
+    private static final String TOTAL_COUNT = "X-Total-Count";
+    private static final String CONTINUATION_TOKEN = "X-Continuation-Token";
+
     private final MinioService minioService;
 
     @Operation(
-            summary = "Показывает все файлы в папке"
+            summary = "Показывает все файлы в папке",
+            description = "Папки идут перед файлами. Количество элементов возвращается в заголовке X-Total-Count. "
+                    + "С limit возвращается страница, токен следующей страницы приходит в заголовке "
+                    + "X-Continuation-Token. Поддерживает If-None-Match: неизменённый листинг возвращает 304"
     )
     @GetMapping
     public ResponseEntity<?> showAllFilesFromFolder(@RequestParam("path")
-                                                    @Parameter(description = "Путь к папке") String path) {
+                                                    @Parameter(description = "Путь к папке") String path,
+                                                    @RequestParam(value = "sort", defaultValue = "name")
+                                                    @Parameter(description = "Поле сортировки: name, size или lastModified")
+                                                    String sort,
+                                                    @RequestParam(value = "order", defaultValue = "asc")
+                                                    @Parameter(description = "Направление сортировки: asc или desc")
+                                                    String order,
+                                                    @RequestParam(value = "limit", required = false)
+                                                    @Parameter(description = "Размер страницы") Integer limit,
+                                                    @RequestParam(value = "continuationToken", required = false)
+                                                    @Parameter(description = "Токен из предыдущей страницы")
+                                                    String continuationToken) {
 
-        List<ResourceResponseDto> files;
+        MinioService.ListingPage page;
 
         try {
-            files = minioService.showAllFilesFromFolder(path);
+            page = minioService.showAllFilesFromFolder(path, sort, order, limit, continuationToken);
         } catch (EntityNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new MessageDto("Папки не существует"));
         } catch (MinioException e) {
@@ -48,7 +65,14 @@ public class DirectoryController {
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new MessageDto("Неизвестная ошибка при скачивании файла"));
     }
-        return ResponseEntity.ok(files);
+        // Last-Modified не отдаём: удаление объекта не сдвигает максимальную дату изменения в папке
+        List<ResourceResponseDto> files = page.resources();
+        String etag = minioService.listingEtag(files);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(TOTAL_COUNT, String.valueOf(page.total()));
+        if (page.continuationToken() != null) {
+            response.header(CONTINUATION_TOKEN, page.continuationToken());
+        }
+        return response.eTag(etag).body(files);
     }
 
     @Operation(
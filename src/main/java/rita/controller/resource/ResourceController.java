@@ -1,6 +1,7 @@
 package rita.controller.resource;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.minio.StatObjectArgs;
 import io.minio.errors.ErrorResponseException;
 import io.swagger.v3.oas.annotations.Operation;
@@ -9,21 +10,40 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import rita.dto.DeleteJobDto;
+import rita.dto.FileMetadata;
 import rita.dto.MessageDto;
 import rita.dto.ResourceResponseDto;
+import rita.dto.UploadResultDto;
 import rita.exeptions.EntityAlreadyExistsException;
 import rita.exeptions.MinioException;
+import rita.minio.MinioProperties;
+import rita.service.DeleteJobService;
 import rita.service.MinioService;
 import rita.service.NamingService;
 
 import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @RestController
 @RequiredArgsConstructor
@@ -31,24 +51,84 @@ import java.util.List;
 @Tag(name = "Resources", description = "Методы для работы со всеми ресурсами")
 public class ResourceController {
 
+    private static final String NEXT_CURSOR = "X-Next-Cursor";
+
     private final MinioService minioService;
+    private final DeleteJobService deleteJobService;
     private final NamingService namingService;
+    private final MinioProperties minioProperties;
+    private final ObjectMapper objectMapper;
 
     @Operation(
-            summary = "Скачивает файл или папку"
+            summary = "Скачивает файл или папку",
+            description = "Для файлов поддерживаются заголовки Range и If-Range. "
+                    + "В режиме redirect отвечает 302 на подписанную ссылку Minio"
     )
     @GetMapping(path = "/download")
     public ResponseEntity<?> downloadResource(@RequestParam("path")
-                                              @Parameter(description = "Путь к файлу") String path) {
+                                              @Parameter(description = "Путь к файлу") String path,
+                                              @RequestParam(value = "level", defaultValue = "-1")
+                                              @Parameter(description = "Уровень сжатия архива папки (0-9)") int level,
+                                              @RequestParam(value = "redirect", required = false)
+                                              @Parameter(description = "Отдать файл через подписанную ссылку Minio") Boolean redirect,
+                                              @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                              @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                              HttpServletResponse servletResponse) throws IOException {
 
         if (path == null || path.isEmpty()) {
             return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
                     .body(new MessageDto("Невалидный или отсутствующий путь"));
         }
-        InputStreamResource resource;
+        String filename = namingService.getNameFromPath(path);
         try {
-            resource = minioService.downloadResource(path);
+            if (path.endsWith("/")) {
+                writeArchive(path, level, filename, servletResponse);
+                return null;
+            }
+            if (redirect != null ? redirect : minioProperties.isPresignedDownloads()) {
+                return ResponseEntity.status(HttpStatus.FOUND)
+                        .location(URI.create(minioService.presignDownload(path)))
+                        .build();
+            }
+            FileMetadata metadata = minioService.getFileMetadata(path);
+            if (isNotModified(ifNoneMatch, metadata)) {
+                // отвечаем до открытия объекта: иначе непрочитанный поток держал бы соединение с Minio
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(metadata.etag()).build();
+            }
+            long size = metadata.size();
+            ResponseEntity.BodyBuilder response;
+
+            HttpRange httpRange = range != null && isIfRangeSatisfied(ifRange, metadata) ? parseRange(range) : null;
+            if (httpRange != null) {
+                long start = httpRange.getRangeStart(size);
+                long end = httpRange.getRangeEnd(size);
+                if (start >= size || start > end) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                            .build();
+                }
+                InputStreamResource resource = minioService.downloadResource(path, start, end - start + 1);
+                response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size)
+                        .contentLength(end - start + 1);
+                return withFileHeaders(response, filename, metadata).body(resource);
+            }
+
+            InputStreamResource resource = minioService.downloadResource(path);
+            response = withFileHeaders(ResponseEntity.ok().contentLength(size), filename, metadata);
+            if (range != null) {
+                // Spring пытается сам нарезать Resource по заголовку Range, что для потока из Minio невозможно,
+                // поэтому полный ответ на запрос с неподходящим Range пишем напрямую
+                response.build().getHeaders().forEach((name, values) ->
+                        values.forEach(value -> servletResponse.addHeader(name, value)));
+                try (InputStream inputStream = resource.getInputStream()) {
+                    inputStream.transferTo(servletResponse.getOutputStream());
+                }
+                return null;
+            }
+            return response.body(resource);
         } catch (EntityNotFoundException e) {
             return ResponseEntity
                     .status(HttpStatus.NOT_FOUND)
@@ -58,18 +138,12 @@ public class ResourceController {
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new MessageDto("Неизвестная ошибка при скачивании файла"));
         }
-        String filename = namingService.getNameFromPath(path);
-        if (!filename.endsWith(".zip")) {
-            filename += ".zip";
-        }
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(resource);
     }
 
     @Operation(
-            summary = "Загружает файл или папку"
+            summary = "Загружает файл или папку",
+            description = "Файлы загружаются параллельно. Если часть файлов не загрузилась, "
+                    + "возвращается 207 с результатом по каждому файлу"
     )
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> uploadResource(@RequestParam("object")
@@ -78,10 +152,76 @@ public class ResourceController {
                                             @Parameter(description = "Путь к файлу")
                                             @RequestParam("path") String path) {
 
+        List<UploadResultDto> results;
+        try {
+            results = minioService.uploadFile(file, path);
+        } catch (MinioException e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MessageDto("Неизвестная ошибка при загрузке файла"));
+        }
+        List<ResourceResponseDto> files = results.stream()
+                .map(UploadResultDto::resource)
+                .filter(Objects::nonNull)
+                .toList();
+
+        if (files.size() == results.size()) {
+            return ResponseEntity.status(HttpStatus.CREATED).body(files);
+        }
+        if (files.isEmpty() && allHaveStatus(results, HttpStatus.CONFLICT)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new MessageDto("Файл с таким именем уже существует"));
+        }
+        if (files.isEmpty() && allHaveStatus(results, HttpStatus.INTERNAL_SERVER_ERROR)) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MessageDto("Неизвестная ошибка при загрузке файла"));
+        }
+        return ResponseEntity.status(HttpStatus.MULTI_STATUS).body(results);
+    }
+
+    @Operation(
+            summary = "Выдаёт ссылки для загрузки файлов напрямую в хранилище",
+            description = "Файлы загружаются POST-формой на url с полями fields и полем file, "
+                    + "после чего загрузку нужно подтвердить через /upload-url/confirm"
+    )
+    @PostMapping(path = "/upload-url")
+    public ResponseEntity<?> presignUpload(@RequestParam("name")
+                                           @Parameter(description = "Имена файлов относительно папки") List<String> names,
+                                           @Parameter(description = "Путь к папке")
+                                           @RequestParam("path") String path) {
+
+        try {
+            return ResponseEntity.ok(minioService.presignUpload(names, path));
+        } catch (EntityAlreadyExistsException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new MessageDto("Файл с таким именем уже существует"));
+        } catch (MinioException e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MessageDto("Неизвестная ошибка при загрузке файла"));
+        }
+    }
+
+    @Operation(
+            summary = "Подтверждает загрузку файлов по ссылкам из /upload-url"
+    )
+    @PostMapping(path = "/upload-url/confirm")
+    public ResponseEntity<?> confirmUpload(@RequestParam("name")
+                                           @Parameter(description = "Имена файлов относительно папки") List<String> names,
+                                           @RequestParam("token")
+                                           @Parameter(description = "Токены загрузки из /upload-url, в порядке имён") List<String> tokens,
+                                           @Parameter(description = "Путь к папке")
+                                           @RequestParam("path") String path) {
+
         List<ResourceResponseDto> files;
 
         try {
-            files = minioService.uploadFile(file, path);
+            files = minioService.confirmUpload(names, tokens, path);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(new MessageDto("Файл не был загружен"));
         } catch (EntityAlreadyExistsException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT)
                     .body(new MessageDto("Файл с таким именем уже существует"));
@@ -94,7 +234,8 @@ public class ResourceController {
     }
 
     @Operation(
-            summary = "Получает информацию о ресурсе"
+            summary = "Получает информацию о ресурсе",
+            description = "Поддерживает If-None-Match и If-Modified-Since: неизменённый ресурс возвращает 304"
     )
     @GetMapping
     public ResponseEntity<?> getInfo(@RequestParam("path")
@@ -113,20 +254,38 @@ public class ResourceController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new MessageDto("Неизвестная ошибка: " + e.getMessage()));
         }
-        return ResponseEntity.ok(dto);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (dto.getEtag() != null) {
+            response.eTag(dto.getEtag());
+        }
+        if (dto.getLastModified() != null) {
+            response.lastModified(dto.getLastModified());
+        }
+        return response.body(dto);
     }
 
     @Operation(
-            summary = "Удаляет файл или папку"
+            summary = "Удаляет файл или папку",
+            description = "С async=true удаление выполняется в фоне: возвращается 202 и задача, "
+                    + "состояние которой доступно в /delete-jobs/{id}"
     )
     @DeleteMapping
     public ResponseEntity<?> deleteResource(@RequestParam("path")
-                                            @Parameter(description = "Путь к файлу") String path) {
+                                            @Parameter(description = "Путь к файлу") String path,
+                                            @RequestParam(value = "async", defaultValue = "false")
+                                            @Parameter(description = "Удалить в фоне и вернуть 202 с задачей")
+                                            boolean async) {
         if (path == null || path.isEmpty()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(new MessageDto("Невалидный или отсутствующий путь"));
         }
         try {
+            if (async) {
+                DeleteJobDto job = deleteJobService.submit(path);
+                return ResponseEntity.accepted()
+                        .location(URI.create("/api/resource/delete-jobs/" + job.id()))
+                        .body(job);
+            }
             minioService.deleteResource(path);
         } catch (EntityNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -138,6 +297,19 @@ public class ResourceController {
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 
+    @Operation(
+            summary = "Возвращает состояние фонового удаления"
+    )
+    @GetMapping(path = "/delete-jobs/{id}")
+    public ResponseEntity<?> getDeleteJob(@PathVariable("id") String id) {
+        try {
+            return ResponseEntity.ok(deleteJobService.getJob(id));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new MessageDto("Задача удаления не найдена"));
+        }
+    }
+
     @Operation(
             summary = "Перемещает или переименовывает файл или папку"
     )
@@ -165,21 +337,185 @@ public class ResourceController {
     }
 
     @Operation(
-            summary = "Поиск по всем файлам пользователя"
+            summary = "Поиск по всем файлам пользователя",
+            description = "Сначала точные совпадения имени, затем совпадения начала имени, затем остальные. "
+                    + "Курсор следующей страницы приходит в заголовке X-Next-Cursor"
     )
     @GetMapping(path = "/search")
     public ResponseEntity<?> searchResource(@RequestParam("query")
                                             @Parameter(description = "Строка, которую вводит пользователь в поиск")
-                                            String query) {
-        List<ResourceResponseDto> files;
+                                            String query,
+                                            @RequestParam(value = "limit", defaultValue = "100")
+                                            @Parameter(description = "Максимальное количество результатов") int limit,
+                                            @RequestParam(value = "cursor", required = false)
+                                            @Parameter(description = "Курсор из предыдущей страницы") String cursor) {
+        MinioService.SearchPage page;
 
         try {
-            files = minioService.searchResource(query);
+            page = minioService.searchResource(query, limit, cursor);
 
         } catch (MinioException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new MessageDto("Ошибка при поиске ресурсов: " + e.getMessage()));
         }
-        return ResponseEntity.status(HttpStatus.OK).body(files);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR, page.nextCursor());
+        }
+        return response.body(page.resources());
+    }
+
+    @Operation(
+            summary = "Поиск по всем файлам пользователя потоком NDJSON",
+            description = "Результаты в том же порядке, что и у обычного поиска, пишутся по одному JSON в строке "
+                    + "по мере чтения. Если результаты не закончились, последняя строка — {\"nextCursor\": ...}"
+    )
+    @GetMapping(path = "/search", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSearchResource(@RequestParam("query")
+                                                                      @Parameter(description = "Строка, которую вводит пользователь в поиск")
+                                                                      String query,
+                                                                      @RequestParam(value = "limit", defaultValue = "100")
+                                                                      @Parameter(description = "Максимальное количество результатов")
+                                                                      int limit,
+                                                                      @RequestParam(value = "cursor", required = false)
+                                                                      @Parameter(description = "Курсор из предыдущей страницы")
+                                                                      String cursor) {
+        MinioService.SearchStream results = minioService.streamSearch(query, limit, cursor);
+        StreamingResponseBody lines = output -> {
+            String nextCursor;
+            try {
+                nextCursor = results.writeTo(resource -> writeLine(output, resource));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (nextCursor != null) {
+                writeLine(output, Map.of("nextCursor", nextCursor));
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(lines);
+    }
+
+    @Operation(
+            summary = "Подсказки имён файлов и папок по началу имени"
+    )
+    @GetMapping(path = "/autocomplete")
+    public ResponseEntity<?> autocomplete(@RequestParam("prefix")
+                                          @Parameter(description = "Начало имени, которое вводит пользователь")
+                                          String prefix,
+                                          @RequestParam(value = "limit", defaultValue = "10")
+                                          @Parameter(description = "Максимальное количество подсказок")
+                                          int limit) {
+        return ResponseEntity.status(HttpStatus.OK).body(minioService.autocomplete(prefix, limit));
+    }
+
+    private void writeLine(OutputStream output, Object value) {
+        try {
+            output.write(objectMapper.writeValueAsBytes(value));
+            output.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean allHaveStatus(List<UploadResultDto> results, HttpStatus status) {
+        return results.stream().allMatch(result -> result.status() == status.value());
+    }
+
+    /**
+     * Пишет ZIP папки прямо в ответ по мере чтения объектов из Minio. Spring стримит
+     * {@link StreamingResponseBody}, только если это объявленный тип ответа метода, а не тело
+     * {@code ResponseEntity<?>}, поэтому архив пишется в {@link HttpServletResponse} в потоке запроса.
+     * Пока папка не найдена, в ответ ничего не записано, и ошибка отдаётся обычным статусом.
+     * <p>
+     * Если архив оборвался, пока ответ ещё в буфере, буфер и заголовки архива сбрасываются, и ошибка отдаётся
+     * тем же статусом. Если ответ уже ушёл клиенту, статус не поменять, а тело ошибки испортило бы архив,
+     * поэтому ошибка пробрасывается мимо обработчиков, и контейнер обрывает соединение.
+     */
+    private void writeArchive(String path, int level, String filename, HttpServletResponse servletResponse)
+            throws IOException {
+        StreamingResponseBody archive = minioService.downloadFolder(path, level);
+        servletResponse.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\""
+                + filename.substring(0, filename.length() - 1) + ".zip\"");
+        servletResponse.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        try {
+            archive.writeTo(servletResponse.getOutputStream());
+        } catch (MinioException | EntityNotFoundException e) {
+            if (servletResponse.isCommitted()) {
+                throw new IllegalStateException("Архив папки " + path + " оборван", e);
+            }
+            servletResponse.reset();
+            throw e;
+        }
+    }
+
+    private ResponseEntity.BodyBuilder withFileHeaders(ResponseEntity.BodyBuilder response, String filename,
+                                                       FileMetadata metadata) {
+        response.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentType(contentType(metadata));
+        if (metadata.etag() != null) {
+            response.eTag(metadata.etag());
+        }
+        if (metadata.lastModified() != null) {
+            response.lastModified(metadata.lastModified());
+        }
+        return response;
+    }
+
+    private HttpRange parseRange(String range) {
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Тип содержимого, сохранённый при загрузке. Его присылает клиент, поэтому пустой или некорректный тип
+     * не должен ломать скачивание.
+     */
+    private MediaType contentType(FileMetadata metadata) {
+        if (metadata.contentType() == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(metadata.contentType());
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    private boolean isNotModified(String ifNoneMatch, FileMetadata metadata) {
+        if (ifNoneMatch == null || metadata.etag() == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String value = tag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals("\"" + metadata.etag() + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isIfRangeSatisfied(String ifRange, FileMetadata metadata) {
+        if (ifRange == null || ifRange.isBlank()) {
+            return true;
+        }
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return metadata.etag() != null && value.equals("\"" + metadata.etag() + "\"");
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return metadata.lastModified() != null
+                    && metadata.lastModified().toEpochSecond() == date.toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
     }
 }
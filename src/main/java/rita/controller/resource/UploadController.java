@@ -0,0 +1,149 @@
+package rita.controller.resource;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import rita.dto.MessageDto;
+import rita.exeptions.EntityAlreadyExistsException;
+import rita.exeptions.MinioException;
+import rita.service.StreamUploadService;
+import rita.service.UploadSessionService;
+
+import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/resource/uploads")
+@Tag(name = "Uploads", description = "Загрузка больших файлов частями и потоком")
+public class UploadController {
+
+    private final UploadSessionService uploadSessionService;
+    private final StreamUploadService streamUploadService;
+
+    @Operation(
+            summary = "Загружает файл из тела запроса потоком",
+            description = "Тело запроса — байты файла, размер может быть неизвестен (chunked)"
+    )
+    @PutMapping(path = "/stream")
+    public ResponseEntity<?> uploadStream(@RequestParam("path")
+                                          @Parameter(description = "Путь к папке") String path,
+                                          @RequestParam("name")
+                                          @Parameter(description = "Имя файла") String name,
+                                          HttpServletRequest request) throws IOException {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(streamUploadService.upload(
+                    path, name, request.getContentType(), request.getContentLengthLong(), request.getInputStream()));
+        } catch (EntityAlreadyExistsException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new MessageDto("Файл с таким именем уже существует"));
+        } catch (MinioException e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MessageDto("Неизвестная ошибка при загрузке файла"));
+        }
+    }
+
+    @Operation(
+            summary = "Создаёт сессию загрузки файла частями"
+    )
+    @PostMapping
+    public ResponseEntity<?> createSession(@RequestParam("path")
+                                           @Parameter(description = "Путь к папке") String path,
+                                           @RequestParam("name")
+                                           @Parameter(description = "Имя файла") String name,
+                                           @RequestParam("size")
+                                           @Parameter(description = "Размер файла в байтах") long size,
+                                           @RequestParam(value = "contentType", required = false)
+                                           @Parameter(description = "Тип содержимого") String contentType) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(uploadSessionService.createSession(path, name, size, contentType));
+        } catch (EntityAlreadyExistsException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new MessageDto("Файл с таким именем уже существует"));
+        } catch (MinioException e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MessageDto("Неизвестная ошибка при загрузке файла"));
+        }
+    }
+
+    @Operation(
+            summary = "Возвращает состояние сессии и номера полученных частей"
+    )
+    @GetMapping(path = "/{id}")
+    public ResponseEntity<?> getSession(@PathVariable("id") String id) {
+        try {
+            return ResponseEntity.ok(uploadSessionService.getSession(id));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(new MessageDto("Сессия загрузки не найдена"));
+        }
+    }
+
+    @Operation(
+            summary = "Загружает часть файла",
+            description = "Тело запроса — байты части. Повторная загрузка части заменяет предыдущую"
+    )
+    @PutMapping(path = "/{id}/chunks/{chunk}")
+    public ResponseEntity<?> uploadChunk(@PathVariable("id") String id,
+                                         @PathVariable("chunk")
+                                         @Parameter(description = "Номер части, начиная с 1") int chunk,
+                                         HttpServletRequest request) throws IOException {
+        try {
+            uploadSessionService.uploadChunk(id, chunk, request.getContentLengthLong(), request.getInputStream());
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(new MessageDto("Сессия загрузки не найдена"));
+        } catch (MinioException e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MessageDto("Неизвестная ошибка при загрузке файла"));
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @Operation(
+            summary = "Собирает файл из загруженных частей"
+    )
+    @PostMapping(path = "/{id}/complete")
+    public ResponseEntity<?> complete(@PathVariable("id") String id) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(uploadSessionService.complete(id));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(new MessageDto("Сессия загрузки не найдена"));
+        } catch (EntityAlreadyExistsException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new MessageDto("Файл с таким именем уже существует"));
+        } catch (MinioException e) {
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MessageDto("Неизвестная ошибка при загрузке файла"));
+        }
+    }
+
+    @Operation(
+            summary = "Отменяет загрузку"
+    )
+    @DeleteMapping(path = "/{id}")
+    public ResponseEntity<?> abort(@PathVariable("id") String id) {
+        try {
+            uploadSessionService.abort(id);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .body(new MessageDto("Сессия загрузки не найдена"));
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,15 @@
+package rita.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import rita.repository.DeleteJob;
+import rita.repository.DeleteJobStatus;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DeleteJobDto(String id, String path, DeleteJobStatus status, long total, long removed, long failed,
+                           String error) {
+
+    public static DeleteJobDto from(DeleteJob job) {
+        return new DeleteJobDto(job.getId(), job.getPath(), job.getStatus(), job.getTotal(), job.getRemoved(),
+                job.getFailed(), job.getError());
+    }
+}
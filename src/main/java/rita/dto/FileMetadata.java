@@ -0,0 +1,7 @@
+package rita.dto;
+
+import java.time.ZonedDateTime;
+
+public record FileMetadata(long size, String etag, ZonedDateTime lastModified, String contentType) {
+
+}
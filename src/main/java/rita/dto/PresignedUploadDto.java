@@ -0,0 +1,12 @@
+package rita.dto;
+
+import java.util.Map;
+
+/**
+ * @param url    адрес, на который файл отправляется POST-формой
+ * @param fields поля формы, которые нужно передать перед полем {@code file}
+ * @param token  идентификатор загрузки, который нужно передать в /upload-url/confirm вместе с именем файла
+ */
+public record PresignedUploadDto(String name, String url, Map<String, String> fields, String token) {
+
+}
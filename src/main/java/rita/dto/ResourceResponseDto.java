@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 import rita.repository.Type;
 
+import java.time.ZonedDateTime;
+
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @Setter
 @Getter
@@ -15,4 +17,12 @@ public class ResourceResponseDto {
     private String name;
     private Long size;
     private Type type;
+    @EqualsAndHashCode.Exclude
+    private String etag;
+    @EqualsAndHashCode.Exclude
+    private ZonedDateTime lastModified;
+
+    public ResourceResponseDto(String path, String name, Long size, Type type) {
+        this(path, name, size, type, null, null);
+    }
 }
@@ -0,0 +1,15 @@
+package rita.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UploadResultDto(String name, int status, String message, ResourceResponseDto resource) {
+
+    public static UploadResultDto created(String name, ResourceResponseDto resource) {
+        return new UploadResultDto(name, 201, null, resource);
+    }
+
+    public static UploadResultDto failed(String name, int status, String message) {
+        return new UploadResultDto(name, status, message, null);
+    }
+}
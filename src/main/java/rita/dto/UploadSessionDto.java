@@ -0,0 +1,8 @@
+package rita.dto;
+
+import java.util.List;
+
+public record UploadSessionDto(String id, String path, String name, long size, long chunkSize, int chunks,
+                               List<Integer> received) {
+
+}
@@ -1,9 +1,22 @@
 package rita.minio;
 
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import rita.service.MetadataCacheService;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 @Configuration
 @RequiredArgsConstructor
@@ -19,4 +32,44 @@ public class MinioConfig {
                 .build();
     }
 
+    @Bean
+    @Lazy
+    public MultipartMinioClient multipartMinioClient() {
+        return new MultipartMinioClient(MinioAsyncClient.builder()
+                .endpoint(minioProperties.getUrl())
+                .credentials(minioProperties.getAccessKey(), minioProperties.getSecretKey())
+                .build());
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Primary
+    public ExecutorService minioTaskExecutor() {
+        return Executors.newFixedThreadPool(minioProperties.getIoThreads(),
+                new CustomizableThreadFactory("minio-io-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService deleteJobExecutor() {
+        return Executors.newFixedThreadPool(minioProperties.getDeleteJobThreads(),
+                new CustomizableThreadFactory("delete-job-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool archiveCompressionPool() {
+        return new ForkJoinPool(minioProperties.getCompressionThreads());
+    }
+
+    /**
+     * Подписка на сбросы кэша метаданных, опубликованные другими узлами.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "minio", name = "metadata-cache", havingValue = "true", matchIfMissing = true)
+    public RedisMessageListenerContainer metadataInvalidationContainer(RedisConnectionFactory connectionFactory,
+                                                                       MetadataCacheService metadataCacheService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(metadataCacheService, new ChannelTopic(MetadataCacheService.CHANNEL));
+        return container;
+    }
+
 }
@@ -0,0 +1,96 @@
+package rita.minio;
+
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.PostPolicy;
+import io.minio.http.Method;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import rita.exeptions.MinioException;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подписывает ссылки на объекты Minio, по которым клиент обращается к хранилищу напрямую.
+ * Ссылки строятся от {@code minio.public-url}, если он задан, иначе от {@code minio.url}.
+ * Регион задан явно, поэтому подпись не требует запросов к Minio.
+ */
+@Component
+@RequiredArgsConstructor
+public class MinioPresigner {
+
+    private final MinioProperties minioProperties;
+    private volatile MinioClient presignClient;
+
+    public String presign(Method method, String object, Map<String, String> queryParams) {
+        try {
+            return client().getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(method)
+                            .bucket("user-files")
+                            .object(object)
+                            .expiry((int) minioProperties.getPresignExpiry().toSeconds(), TimeUnit.SECONDS)
+                            .extraQueryParams(queryParams)
+                            .build()
+            );
+        } catch (Exception e) {
+            throw new MinioException("Не удалось подписать ссылку: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Подписывает POST-форму загрузки одного объекта. Политика формы разрешает только ключ {@code object}
+     * и размер не больше {@code minio.max-upload-size}, а живёт {@code minio.upload-url-expiry}: по ней
+     * нельзя ни обойти лимит размера, ни долго перезаписывать уже подтверждённый объект.
+     * Поле {@code Content-Type} политика разрешает любое: Minio сохраняет его с объектом, и при подтверждении
+     * тип берётся из объекта. В форму подставляется {@code contentType}, клиент может заменить его своим.
+     *
+     * @return поля формы, которые клиент отправляет вместе с файлом в поле {@code file}
+     */
+    public Map<String, String> presignUpload(String object, String contentType) {
+        PostPolicy policy = new PostPolicy("user-files",
+                ZonedDateTime.now().plus(minioProperties.getUploadUrlExpiry()));
+        policy.addEqualsCondition("key", object);
+        policy.addStartsWithCondition("Content-Type", "");
+        policy.addContentLengthRangeCondition(0, minioProperties.getMaxUploadSize().toBytes());
+        try {
+            Map<String, String> fields = new HashMap<>(client().getPresignedPostFormData(policy));
+            fields.put("key", object);
+            fields.put("Content-Type", contentType);
+            return fields;
+        } catch (Exception e) {
+            throw new MinioException("Не удалось подписать форму загрузки: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Адрес бакета, на который отправляются формы из {@link #presignUpload}.
+     */
+    public String uploadUrl() {
+        String publicUrl = minioProperties.getPublicUrl();
+        String endpoint = publicUrl == null || publicUrl.isBlank() ? minioProperties.getUrl() : publicUrl;
+        return (endpoint.endsWith("/") ? endpoint : endpoint + "/") + "user-files";
+    }
+
+    private MinioClient client() {
+        MinioClient client = presignClient;
+        if (client == null) {
+            synchronized (this) {
+                client = presignClient;
+                if (client == null) {
+                    String publicUrl = minioProperties.getPublicUrl();
+                    client = MinioClient.builder()
+                            .endpoint(publicUrl == null || publicUrl.isBlank() ? minioProperties.getUrl() : publicUrl)
+                            .credentials(minioProperties.getAccessKey(), minioProperties.getSecretKey())
+                            .region(minioProperties.getRegion())
+                            .build();
+                    presignClient = client;
+                }
+            }
+        }
+        return client;
+    }
+}
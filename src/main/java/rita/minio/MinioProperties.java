@@ -4,6 +4,9 @@ package rita.minio;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
 
 @Data
 @Configuration
@@ -13,4 +16,32 @@ public class MinioProperties {
     private String accessKey;
     private String secretKey;
     private String bucket;
+    private String publicUrl;
+    private String region = "us-east-1";
+    private boolean presignedDownloads = false;
+    private Duration presignExpiry = Duration.ofMinutes(5);
+    private Duration uploadUrlExpiry = Duration.ofMinutes(2);
+    private DataSize maxUploadSize = DataSize.ofGigabytes(1);
+    private int ioThreads = 16;
+    private int prefetchDepth = 8;
+    private DataSize prefetchByteBudget = DataSize.ofMegabytes(32);
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    private DataSize uploadChunkSize = DataSize.ofMegabytes(8);
+    private Duration uploadSessionTtl = Duration.ofHours(24);
+    private int uploadParallelism = 4;
+    private int uploadFileParallelism = 8;
+    private int deleteParallelism = 4;
+    private int deleteJobThreads = 2;
+    private Duration deleteJobLease = Duration.ofMinutes(2);
+    private boolean legacyImport = true;
+    private Duration orphanGrace = Duration.ofHours(24);
+    private boolean searchIndex = false;
+    private DataSize searchIndexBudget = DataSize.ofMegabytes(64);
+    private Duration searchIndexTtl = Duration.ofMinutes(5);
+    private boolean listingCache = true;
+    private Duration listingCacheTtl = Duration.ofMinutes(10);
+    private boolean metadataCache = true;
+    private int metadataCacheSize = 10_000;
+    private Duration metadataCacheLocalTtl = Duration.ofSeconds(30);
+    private Duration metadataCacheTtl = Duration.ofMinutes(5);
 }
@@ -0,0 +1,57 @@
+package rita.minio;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.MinioAsyncClient;
+import io.minio.messages.Part;
+
+import java.io.InputStream;
+
+/**
+ * Открывает защищённые методы S3 multipart upload из {@link MinioAsyncClient},
+ * которые нужны для загрузки файла частями в несколько запросов.
+ */
+public class MultipartMinioClient extends MinioAsyncClient {
+
+    public MultipartMinioClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    public String createMultipartUpload(String bucket, String object, String contentType) throws Exception {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (contentType != null && !contentType.isBlank()) {
+            headers.put("Content-Type", contentType);
+        }
+        return createMultipartUploadAsync(bucket, null, object, headers, null)
+                .get()
+                .result()
+                .uploadId();
+    }
+
+    public String uploadPart(String bucket, String object, String uploadId, int partNumber, byte[] data)
+            throws Exception {
+        return uploadPartAsync(bucket, null, object, data, data.length, uploadId, partNumber, null, null)
+                .get()
+                .etag();
+    }
+
+    /**
+     * Загружает часть из потока известной длины: SDK читает ровно {@code length} байт,
+     * если поток короче, бросает {@link io.minio.errors.InsufficientDataException}.
+     */
+    public String uploadPart(String bucket, String object, String uploadId, int partNumber,
+                             InputStream data, long length) throws Exception {
+        return uploadPartAsync(bucket, null, object, data, length, uploadId, partNumber, null, null)
+                .get()
+                .etag();
+    }
+
+    public void completeMultipartUpload(String bucket, String object, String uploadId, Part[] parts)
+            throws Exception {
+        completeMultipartUploadAsync(bucket, null, object, uploadId, parts, null, null).get();
+    }
+
+    public void abortMultipartUpload(String bucket, String object, String uploadId) throws Exception {
+        abortMultipartUploadAsync(bucket, null, object, uploadId, null, null).get();
+    }
+}
@@ -0,0 +1,54 @@
+package rita.repository;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "delete_jobs")
+@Builder
+public class DeleteJob {
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "path", nullable = false, length = 1024)
+    private String path;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private DeleteJobStatus status;
+
+    @Column(name = "total", nullable = false)
+    private long total;
+
+    @Column(name = "removed", nullable = false)
+    private long removed;
+
+    @Column(name = "failed", nullable = false)
+    private long failed;
+
+    @Column(name = "error", length = 2048)
+    private String error;
+
+    @Column(name = "owner", length = 36)
+    private String owner;
+
+    @Column(name = "heartbeat_at")
+    private Instant heartbeatAt;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
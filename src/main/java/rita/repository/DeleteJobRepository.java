@@ -0,0 +1,62 @@
+package rita.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface DeleteJobRepository extends JpaRepository<DeleteJob, String> {
+
+    Optional<DeleteJob> findByIdAndUserId(String id, Long userId);
+
+    @Query(value = "select j.id from DeleteJob j where j.status in :statuses "
+            + "and (j.heartbeatAt is null or j.heartbeatAt < :staleBefore)")
+    List<String> findStaleIds(Collection<DeleteJobStatus> statuses, Instant staleBefore);
+
+    /**
+     * Забирает задачу, если её владелец давно не продлевал аренду. Из нескольких узлов,
+     * одновременно пытающихся забрать одну задачу, обновление проходит только у одного.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update DeleteJob j set j.owner = :owner, j.heartbeatAt = :now "
+            + "where j.id = :id and j.status in :statuses "
+            + "and (j.heartbeatAt is null or j.heartbeatAt < :staleBefore)")
+    int claim(String id, Collection<DeleteJobStatus> statuses, String owner, Instant now, Instant staleBefore);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update DeleteJob j set j.heartbeatAt = :now where j.owner = :owner and j.status in :statuses")
+    int heartbeat(String owner, Collection<DeleteJobStatus> statuses, Instant now);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update DeleteJob j set j.removed = :removed, j.updatedAt = :updatedAt, j.heartbeatAt = :updatedAt "
+            + "where j.id = :id and j.owner = :owner and j.removed < :removed")
+    int updateProgress(String id, String owner, long removed, Instant updatedAt);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update DeleteJob j set j.status = rita.repository.DeleteJobStatus.RUNNING, j.total = :total, "
+            + "j.updatedAt = :now, j.heartbeatAt = :now where j.id = :id and j.owner = :owner")
+    int start(String id, String owner, long total, Instant now);
+
+    /**
+     * Завершает задачу, только если ею всё ещё владеет {@code owner}.
+     *
+     * @return 0, если задачу успел забрать другой узел
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update DeleteJob j set j.status = :status, "
+            + "j.removed = case when j.removed < :removed then :removed else j.removed end, "
+            + "j.failed = :failed, j.error = :error, j.updatedAt = :updatedAt "
+            + "where j.id = :id and j.owner = :owner")
+    int finish(String id, String owner, DeleteJobStatus status, long removed, long failed, String error,
+               Instant updatedAt);
+}
@@ -0,0 +1,5 @@
+package rita.repository;
+
+public enum DeleteJobStatus {
+    PENDING, RUNNING, COMPLETED, FAILED;
+}
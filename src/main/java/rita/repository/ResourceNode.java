@@ -0,0 +1,62 @@
+package rita.repository;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Запись логического пространства имён пользователя.
+ * <p>
+ * {@code path} — путь относительно корня пользователя, у папок он заканчивается на {@code /}.
+ * {@code storageKey} — неизменяемый ключ объекта в Minio, у папок он пустой.
+ * Перемещение и переименование меняют только {@code path}, объект в хранилище остаётся на месте.
+ * Колонки {@code path}, {@code name} и {@code storage_key} в Postgres имеют колляцию {@code "C"}, поэтому база
+ * сравнивает их побайтово, как Minio и индексы в памяти.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "resource",
+        uniqueConstraints = @UniqueConstraint(name = "resource_user_path_key", columnNames = {"user_id", "path"}),
+        indexes = @Index(name = "resource_parent_name_idx", columnList = "user_id, parent_path, name"))
+@Builder
+public class ResourceNode {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "path", nullable = false, length = 1024)
+    private String path;
+
+    @Column(name = "parent_path", nullable = false, length = 1024)
+    private String parentPath;
+
+    @Column(name = "name", nullable = false, length = 255)
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 16)
+    private Type type;
+
+    @Column(name = "storage_key", unique = true, length = 1024)
+    private String storageKey;
+
+    @Column(name = "size")
+    private Long size;
+
+    @Column(name = "etag", length = 64)
+    private String etag;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "last_modified")
+    private Instant lastModified;
+}
@@ -0,0 +1,145 @@
+package rita.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Запросы по поддереву принимают путь и LIKE-шаблон его потомков, экранированный символом {@code !}.
+ */
+public interface ResourceNodeRepository extends JpaRepository<ResourceNode, Long> {
+
+    Optional<ResourceNode> findByUserIdAndPath(Long userId, String path);
+
+    boolean existsByUserIdAndPath(Long userId, String path);
+
+    List<ResourceNode> findByUserIdAndPathIn(Long userId, Collection<String> paths);
+
+    List<ResourceNode> findByUserIdAndParentPath(Long userId, String parentPath, Sort sort);
+
+    long countByUserIdAndParentPath(Long userId, String parentPath);
+
+    List<ResourceNode> findByUserIdAndParentPathAndType(Long userId, String parentPath, Type type, Pageable pageable);
+
+    /**
+     * Страница папки после имени {@code name} в порядке имени; порядок задаёт {@code pageable}.
+     */
+    @Query(value = "select r from ResourceNode r where r.userId = :userId and r.parentPath = :parentPath "
+            + "and r.type = :type and (:desc = false and r.name > :name or :desc = true and r.name < :name)")
+    List<ResourceNode> findChildrenAfterName(Long userId, String parentPath, Type type, String name,
+                                             boolean desc, Pageable pageable);
+
+    /**
+     * Страница папки после {@code (size, name)} в порядке размера, а при равном размере — имени по возрастанию.
+     */
+    @Query(value = "select r from ResourceNode r where r.userId = :userId and r.parentPath = :parentPath "
+            + "and r.type = :type and (r.size = :size and r.name > :name "
+            + "or :desc = false and r.size > :size or :desc = true and r.size < :size)")
+    List<ResourceNode> findChildrenAfterSize(Long userId, String parentPath, Type type, Long size, String name,
+                                             boolean desc, Pageable pageable);
+
+    /**
+     * Страница папки после {@code (lastModified, name)} в порядке даты изменения, а при равной дате — имени
+     * по возрастанию.
+     */
+    @Query(value = "select r from ResourceNode r where r.userId = :userId and r.parentPath = :parentPath "
+            + "and r.type = :type and (r.lastModified = :lastModified and r.name > :name "
+            + "or :desc = false and r.lastModified > :lastModified or :desc = true and r.lastModified < :lastModified)")
+    List<ResourceNode> findChildrenAfterLastModified(Long userId, String parentPath, Type type, Instant lastModified,
+                                                     String name, boolean desc, Pageable pageable);
+
+    /**
+     * Поиск по имени после пути {@code after} в посимвольном порядке путей. Условие {@code lower(name) like}
+     * обслуживает триграммный индекс {@code resource_name_trgm_idx}.
+     *
+     * @param pattern  LIKE-шаблон в нижнем регистре
+     * @param excluded LIKE-шаблон имён, которые не нужны, даже если подходят под {@code pattern}
+     */
+    @Query(value = "select * from resource where user_id = :userId "
+            + "and lower(name) like :pattern escape '!' and lower(name) not like :excluded escape '!' "
+            + "and path > :after order by path limit :limit", nativeQuery = true)
+    List<ResourceNode> searchByName(Long userId, String pattern, String excluded, String after, int limit);
+
+    /**
+     * Различные имена, начинающиеся с префикса, вместе с типом ресурса: строки {@code [name, type]}.
+     * Префиксный {@code like} обслуживает тот же триграммный индекс, порядок посимвольный, как в памяти.
+     *
+     * @param pattern LIKE-шаблон в нижнем регистре
+     */
+    @Query(value = "select min(name), type from resource where user_id = :userId "
+            + "and lower(name) like :pattern escape '!' "
+            + "group by lower(name), type order by lower(name), type desc limit :limit",
+            nativeQuery = true)
+    List<Object[]> completeName(Long userId, String pattern, int limit);
+
+    List<ResourceNode> findByStorageKeyIn(Collection<String> storageKeys);
+
+    Optional<ResourceNode> findByStorageKey(String storageKey);
+
+    /**
+     * Записи с объектами в побайтовом порядке ключей — в том же порядке Minio отдаёт листинг бакета.
+     * Побайтовый порядок даёт колляция {@code "C"} колонки {@code storage_key}.
+     */
+    @Query(value = "select * from resource where storage_key is not null and storage_key > :after "
+            + "order by storage_key limit :limit", nativeQuery = true)
+    List<ResourceNode> findObjectsAfter(String after, int limit);
+
+    @Query(value = "select r from ResourceNode r where r.userId = :userId "
+            + "and (r.path = :path or r.path like :pattern escape '!') and r.path > :after order by r.path")
+    List<ResourceNode> findTree(Long userId, String path, String pattern, String after, Pageable pageable);
+
+    @Query(value = "select count(r) from ResourceNode r where r.userId = :userId "
+            + "and (r.path = :path or r.path like :pattern escape '!') and r.storageKey is not null")
+    long countObjects(Long userId, String path, String pattern);
+
+    @Transactional
+    @Modifying
+    @Query(value = "insert into resource (user_id, path, parent_path, name, type) "
+            + "values (:userId, :path, :parentPath, :name, 'DIRECTORY') on conflict do nothing",
+            nativeQuery = true)
+    int insertDirectoryIfAbsent(Long userId, String path, String parentPath, String name);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update ResourceNode r set r.storageKey = null where r.id = :id and r.storageKey = :storageKey")
+    int detachStorageKey(Long id, String storageKey);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from ResourceNode r where r.id = :id and r.storageKey = :storageKey")
+    int deleteObject(Long id, String storageKey);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update ResourceNode r set r.storageKey = :storageKey "
+            + "where r.userId = :userId and r.path = :path and r.storageKey is null")
+    int attachStorageKey(Long userId, String path, String storageKey);
+
+    /**
+     * Переносит ресурс и всех его потомков одним UPDATE: меняются только пути, ключи объектов остаются прежними.
+     *
+     * @param start позиция в старом пути, с которой начинается часть, общая для старого и нового пути
+     */
+    @Modifying
+    @Query(value = "update ResourceNode r set "
+            + "r.path = concat(:to, substring(r.path, :start)), "
+            + "r.parentPath = case when r.path = :from then :toParent "
+            + "else concat(:to, substring(r.parentPath, :start)) end, "
+            + "r.name = case when r.path = :from then :toName else r.name end "
+            + "where r.userId = :userId and (r.path = :from or r.path like :pattern escape '!')")
+    int move(Long userId, String from, String pattern, String to, String toParent, String toName, int start);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from ResourceNode r where r.userId = :userId "
+            + "and (r.path = :path or r.path like :pattern escape '!')")
+    int deleteTree(Long userId, String path, String pattern);
+}
@@ -0,0 +1,198 @@
+package rita.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import rita.exeptions.MinioException;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
+import rita.repository.Type;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+/**
+ * Пишет содержимое папки из Minio в zip-архив прямо в выходной поток,
+ * не накапливая архив в памяти. Состав папки, размеры и content-type берутся из таблицы {@code resource},
+ * пустые вложенные папки попадают в архив отдельными записями.
+ * <p>
+ * Следующие {@code prefetchDepth} объектов из листинга скачиваются параллельно,
+ * пока их суммарный размер укладывается в {@code prefetchByteBudget}; объекты,
+ * которые в бюджет не помещаются, читаются потоком в свою очередь.
+ * В архив записи всегда попадают в порядке листинга.
+ * <p>
+ * Сжатие выполняется на отдельном {@link ForkJoinPool}: предзагруженные объекты сжимаются
+ * параллельно друг с другом, а крупные потоковые — параллельно по блокам (см. {@link ZipStreamWriter}).
+ * Уже сжатые форматы (изображения, видео, архивы, pdf и т.п.) определяются по content-type
+ * и расширению и кладутся в архив без сжатия ({@code STORED}).
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class ArchiveService {
+
+    private static final Set<String> INCOMPRESSIBLE_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "heif", "avif",
+            "mp4", "m4v", "mov", "mkv", "avi", "webm", "wmv", "flv",
+            "mp3", "m4a", "aac", "ogg", "oga", "opus", "flac", "wma",
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "lz4",
+            "pdf", "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub", "jar", "apk"
+    );
+    private static final Set<String> INCOMPRESSIBLE_CONTENT_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2",
+            "application/x-xz", "application/x-7z-compressed", "application/x-rar-compressed",
+            "application/vnd.rar", "application/zstd", "application/pdf", "application/epub+zip",
+            "application/java-archive", "application/vnd.android.package-archive"
+    );
+    private static final Set<String> COMPRESSIBLE_MEDIA_TYPES = Set.of(
+            "image/svg+xml", "image/bmp", "image/x-ms-bmp", "image/tiff", "audio/wav", "audio/x-wav"
+    );
+
+    private final MinioClient minioClient;
+    private final NamingService namingService;
+    private final NamespaceService namespaceService;
+    private final MinioProperties minioProperties;
+    private final ExecutorService minioTaskExecutor;
+    private final ForkJoinPool archiveCompressionPool;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param path логический путь папки; её содержимое берётся из таблицы {@code resource}
+     */
+    public void writeFolder(Long userId, String path, int level, OutputStream outputStream) {
+        String fileName = namingService.getNameFromPath(path);
+        Deque<PendingEntry> pending = new ArrayDeque<>();
+        try {
+            ZipStreamWriter zipOut = new ZipStreamWriter(outputStream, archiveCompressionPool);
+            Iterator<ResourceNode> nodes = namespaceService.tree(userId, path);
+            boolean hasFiles = false;
+            long reservedBytes = 0;
+
+            while (nodes.hasNext() || !pending.isEmpty()) {
+                while (nodes.hasNext() && pending.size() < Math.max(1, minioProperties.getPrefetchDepth())) {
+                    ResourceNode node = nodes.next();
+                    if (node.getPath().equals(path)) {
+                        continue;
+                    }
+                    hasFiles = true;
+                    String archiveName = fileName + node.getPath().substring(path.length());
+                    if (node.getType() == Type.DIRECTORY) {
+                        pending.add(new PendingEntry(archiveName, null, null, 0, 0, null));
+                        continue;
+                    }
+                    PendingEntry entry = prefetch(node, archiveName, level, reservedBytes);
+                    reservedBytes += entry.reservedBytes();
+                    pending.add(entry);
+                }
+                if (pending.isEmpty()) {
+                    continue;
+                }
+
+                PendingEntry entry = pending.poll();
+                if (entry.objectName() == null) {
+                    zipOut.writeDirectory(entry.archiveName());
+                } else if (entry.content() != null) {
+                    ZipStreamWriter.CompressedEntry compressed = entry.content().get();
+                    zipOut.writeEntry(entry.archiveName(), compressed);
+                    countBytes(compressed.method(), compressed.size());
+                } else {
+                    try (GetObjectResponse inputStream = getObject(entry.objectName())) {
+                        String contentType = entry.contentType() != null || inputStream.headers() == null
+                                ? entry.contentType()
+                                : inputStream.headers().get("Content-Type");
+                        int entryLevel = compressionLevel(entry.archiveName(), contentType, level);
+                        zipOut.writeEntry(entry.archiveName(), inputStream, entry.size(), entryLevel);
+                        countBytes(entryLevel == Deflater.NO_COMPRESSION
+                                ? ZipStreamWriter.STORED : ZipStreamWriter.DEFLATED, entry.size());
+                    }
+                }
+                reservedBytes -= entry.reservedBytes();
+            }
+            if (!hasFiles) {
+                zipOut.writeDirectory(fileName);
+            }
+            zipOut.finish();
+        } catch (Exception e) {
+            log.error("Не удалось сформировать архив {}", path, e);
+            throw new MinioException("Неизвестная ошибка Minio: " + e.getMessage());
+        } finally {
+            pending.forEach(entry -> {
+                if (entry.content() != null) {
+                    entry.content().cancel(true);
+                }
+            });
+        }
+    }
+
+    private PendingEntry prefetch(ResourceNode node, String archiveName, int level, long reservedBytes) {
+        String objectName = node.getStorageKey();
+        String contentType = node.getContentType();
+        long size = node.getSize() == null ? 0 : node.getSize();
+        if (reservedBytes + size > minioProperties.getPrefetchByteBudget().toBytes()) {
+            return new PendingEntry(archiveName, objectName, contentType, size, 0, null);
+        }
+        int entryLevel = compressionLevel(archiveName, contentType, level);
+        CompletableFuture<ZipStreamWriter.CompressedEntry> content = CompletableFuture.supplyAsync(() -> {
+            try (InputStream inputStream = getObject(objectName)) {
+                return inputStream.readAllBytes();
+            } catch (Exception e) {
+                throw new MinioException("Не удалось получить объект " + objectName + ": " + e.getMessage());
+            }
+        }, minioTaskExecutor).thenApplyAsync(data -> ZipStreamWriter.compress(data, entryLevel), archiveCompressionPool);
+        return new PendingEntry(archiveName, objectName, contentType, size, size, content);
+    }
+
+    static int compressionLevel(String objectName, String contentType, int level) {
+        if (contentType != null && !contentType.isBlank()) {
+            String mediaType = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+            if (INCOMPRESSIBLE_CONTENT_TYPES.contains(mediaType)
+                    || mediaType.startsWith("application/vnd.openxmlformats-officedocument.")) {
+                return Deflater.NO_COMPRESSION;
+            }
+            if ((mediaType.startsWith("image/") || mediaType.startsWith("video/") || mediaType.startsWith("audio/"))
+                    && !COMPRESSIBLE_MEDIA_TYPES.contains(mediaType)) {
+                return Deflater.NO_COMPRESSION;
+            }
+        }
+        int dot = objectName.lastIndexOf('.');
+        if (dot >= 0 && INCOMPRESSIBLE_EXTENSIONS.contains(objectName.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+            return Deflater.NO_COMPRESSION;
+        }
+        return level;
+    }
+
+    private void countBytes(int method, long bytes) {
+        meterRegistry.counter("archive.entry.bytes",
+                        "method", method == ZipStreamWriter.STORED ? "stored" : "deflated")
+                .increment(bytes);
+    }
+
+    private GetObjectResponse getObject(String objectName) throws Exception {
+        return minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket("user-files")
+                        .object(objectName)
+                        .build()
+        );
+    }
+
+    /**
+     * @param objectName ключ объекта в Minio; {@code null} для папки
+     */
+    private record PendingEntry(String archiveName, String objectName, String contentType, long size,
+                                long reservedBytes, CompletableFuture<ZipStreamWriter.CompressedEntry> content) {
+    }
+}
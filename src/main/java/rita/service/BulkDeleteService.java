@@ -0,0 +1,123 @@
+package rita.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import rita.exeptions.MinioException;
+import rita.minio.MinioProperties;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Удаляет объекты пачками через S3 multi-object delete ({@code removeObjects}).
+ * <p>
+ * Ключи делятся на пачки по {@value #BATCH_SIZE}, одновременно выполняется не больше
+ * {@code minio.delete-parallelism} пачек. Ошибки по отдельным ключам не теряются, а собираются в {@link Report}.
+ * Количество удалённых и неудалённых объектов пишется в счётчик {@code storage.delete.objects}.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class BulkDeleteService {
+
+    static final int BATCH_SIZE = 1000;
+
+    private final MinioClient minioClient;
+    private final MinioProperties minioProperties;
+    private final ExecutorService minioTaskExecutor;
+    private final MeterRegistry meterRegistry;
+
+    public Report removeAll(Iterator<String> objectNames) {
+        return removeAll(objectNames, processed -> {
+        });
+    }
+
+    /**
+     * @param progress получает число успешно удалённых ключей после каждой пачки
+     */
+    public Report removeAll(Iterator<String> objectNames, LongConsumer progress) {
+
+        Semaphore inFlight = new Semaphore(Math.max(1, minioProperties.getDeleteParallelism()));
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        AtomicLong deleted = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        Queue<String> errors = new ConcurrentLinkedQueue<>();
+
+        try {
+            while (objectNames.hasNext()) {
+                List<DeleteObject> batch = new ArrayList<>(BATCH_SIZE);
+                while (objectNames.hasNext() && batch.size() < BATCH_SIZE) {
+                    batch.add(new DeleteObject(objectNames.next()));
+                }
+                inFlight.acquire();
+                batches.add(CompletableFuture
+                        .runAsync(() -> {
+                            removeBatch(batch, deleted, failed, errors);
+                            progress.accept(deleted.get());
+                        }, minioTaskExecutor)
+                        .whenComplete((result, e) -> inFlight.release()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MinioException("Удаление прервано", e);
+        } finally {
+            CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+        }
+        return new Report(deleted.get(), failed.get(), List.copyOf(errors));
+    }
+
+    private void removeBatch(List<DeleteObject> batch, AtomicLong deleted, AtomicLong failed, Queue<String> errors) {
+        int failedInBatch = 0;
+        try {
+            Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                    RemoveObjectsArgs.builder()
+                            .bucket("user-files")
+                            .objects(batch)
+                            .build()
+            );
+            for (Result<DeleteError> result : results) {
+                DeleteError error = result.get();
+                log.warn("Не удалось удалить {}: {} {}", error.objectName(), error.code(), error.message());
+                errors.add(error.objectName() + ": " + error.message());
+                failedInBatch++;
+            }
+        } catch (Exception e) {
+            log.error("Не удалось удалить пачку из {} объектов", batch.size(), e);
+            errors.add("пачка из " + batch.size() + " объектов: " + e.getMessage());
+            failed.addAndGet(batch.size());
+            count("failed", batch.size());
+            return;
+        }
+        deleted.addAndGet(batch.size() - failedInBatch);
+        failed.addAndGet(failedInBatch);
+        count("deleted", batch.size() - failedInBatch);
+        count("failed", failedInBatch);
+    }
+
+    private void count(String result, long objects) {
+        if (objects > 0) {
+            meterRegistry.counter("storage.delete.objects", "result", result).increment(objects);
+        }
+    }
+
+    /**
+     * @param errors описания ключей или пачек, которые удалить не удалось
+     */
+    public record Report(long deleted, long failed, List<String> errors) {
+    }
+}
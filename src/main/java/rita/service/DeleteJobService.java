@@ -0,0 +1,153 @@
+package rita.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import rita.dto.DeleteJobDto;
+import rita.minio.MinioProperties;
+import rita.repository.DeleteJob;
+import rita.repository.DeleteJobRepository;
+import rita.repository.DeleteJobStatus;
+import rita.security.AuthenticationHelperImpl;
+
+import javax.persistence.EntityNotFoundException;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Фоновое удаление больших папок.
+ * <p>
+ * Задача сохраняется в таблицу {@code delete_jobs} и выполняется на пуле {@code deleteJobExecutor};
+ * прогресс (удалено / всего) обновляется после каждой пачки {@link BulkDeleteService}.
+ * Записи ресурса удаляются из пространства имён только после того, как удалены все его объекты.
+ * <p>
+ * Задачей владеет узел, который её выполняет: он продлевает аренду ({@code heartbeat_at}) каждые
+ * {@code minio.delete-job-heartbeat-interval}. Задачи, аренда которых не продлевалась дольше
+ * {@code minio.delete-job-lease}, другие узлы забирают атомарным обновлением и запускают заново:
+ * удаление идемпотентно, поэтому повторный проход просто доделывает работу.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class DeleteJobService {
+
+    private static final List<DeleteJobStatus> UNFINISHED = List.of(DeleteJobStatus.PENDING, DeleteJobStatus.RUNNING);
+
+    private final DeleteJobRepository deleteJobRepository;
+    private final MinioService minioService;
+    private final AuthenticationHelperImpl authenticationHelper;
+    @Qualifier("deleteJobExecutor")
+    private final ExecutorService deleteJobExecutor;
+    private final MinioProperties minioProperties;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public DeleteJobDto submit(String clientPath) {
+
+        Long userId = authenticationHelper.getCurrentUserId();
+        String path = minioService.resolveExisting(clientPath);
+
+        Instant now = Instant.now();
+        DeleteJob job = deleteJobRepository.save(DeleteJob.builder()
+                .id(UUID.randomUUID().toString())
+                .userId(userId)
+                .path(path)
+                .status(DeleteJobStatus.PENDING)
+                .owner(nodeId)
+                .heartbeatAt(now)
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+        deleteJobExecutor.execute(() -> run(job.getId()));
+        return toDto(job);
+    }
+
+    public DeleteJobDto getJob(String id) {
+        DeleteJob job = deleteJobRepository.findByIdAndUserId(id, authenticationHelper.getCurrentUserId())
+                .orElseThrow(() -> new EntityNotFoundException("Задача удаления не найдена"));
+        return toDto(job);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${minio.delete-job-lease:PT2M}", initialDelayString = "${minio.delete-job-lease:PT2M}")
+    public void resumeUnfinishedJobs() {
+        try {
+            Instant now = Instant.now();
+            Instant staleBefore = now.minus(minioProperties.getDeleteJobLease());
+            for (String id : deleteJobRepository.findStaleIds(UNFINISHED, staleBefore)) {
+                if (deleteJobRepository.claim(id, UNFINISHED, nodeId, now, staleBefore) == 1) {
+                    log.info("Возобновляем задачу удаления {}", id);
+                    deleteJobExecutor.execute(() -> run(id));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось возобновить незавершённые задачи удаления", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${minio.delete-job-heartbeat-interval:PT30S}")
+    public void heartbeat() {
+        try {
+            deleteJobRepository.heartbeat(nodeId, UNFINISHED, Instant.now());
+        } catch (Exception e) {
+            log.warn("Не удалось продлить аренду задач удаления", e);
+        }
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    void run(String id) {
+        DeleteJob job = deleteJobRepository.findById(id).orElse(null);
+        if (job == null || job.getStatus() == DeleteJobStatus.COMPLETED || job.getStatus() == DeleteJobStatus.FAILED
+                || !nodeId.equals(job.getOwner())) {
+            return;
+        }
+        try {
+            // записи ресурса остаются до конца удаления, поэтому после перезапуска объекты считаются заново целиком;
+            // уже удалённые объекты удаляются повторно без ошибок, а монотонный updateProgress не откатывает прогресс
+            long total = minioService.countObjects(job.getUserId(), job.getPath());
+            if (deleteJobRepository.start(id, nodeId, total, Instant.now()) == 0) {
+                log.info("Задачу удаления {} забрал другой узел", id);
+                return;
+            }
+
+            BulkDeleteService.Report report = minioService.deleteByPrefix(job.getUserId(), job.getPath(), deleted ->
+                    deleteJobRepository.updateProgress(id, nodeId, deleted, Instant.now()));
+
+            if (report.failed() > 0) {
+                finish(id, DeleteJobStatus.FAILED, report.deleted(), report.failed(),
+                        String.join("; ", report.errors()));
+            } else {
+                finish(id, DeleteJobStatus.COMPLETED, report.deleted(), 0, null);
+            }
+        } catch (Exception e) {
+            log.error("Задача удаления {} завершилась ошибкой", id, e);
+            finish(id, DeleteJobStatus.FAILED, 0, 0, e.getMessage());
+        }
+    }
+
+    private void finish(String id, DeleteJobStatus status, long removed, long failed, String error) {
+        if (deleteJobRepository.finish(id, nodeId, status, removed, failed, truncate(error), Instant.now()) == 0) {
+            log.warn("Задачу удаления {} забрал другой узел, результат этого узла не сохранён", id);
+        }
+    }
+
+    private DeleteJobDto toDto(DeleteJob job) {
+        return DeleteJobDto.from(job);
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 2048 ? message.substring(0, 2048) : message;
+    }
+}
@@ -0,0 +1,214 @@
+package rita.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import rita.minio.MinioProperties;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Кэш листингов папок в Redis ({@code minio.listing-cache}).
+ * <p>
+ * Листинги папки лежат в хэше {@code listing:<userId>:<путь>}, по полю на сортировку и страницу, так что папка
+ * сбрасывается одним удалением ключа. Пути папок с кэшем пользователя хранятся в множестве
+ * {@code listings:<userId>}: по нему сбрасывается поддерево при удалении и перемещении папки. Оба ключа живут
+ * не дольше {@code minio.listing-cache-ttl}.
+ * <p>
+ * Сброс папки увеличивает её поколение {@code listing-gen:<userId>:<путь>}. Листинг, прочитанный из базы,
+ * сохраняется Lua-скриптом, только если поколение не изменилось с начала чтения: листинг, прочитанный
+ * до параллельного изменения, не попадёт в кэш после сброса.
+ * Ошибки Redis не ломают листинг: он просто читается из базы.
+ * Попадания и промахи пишутся в {@code listing.cache.requests}, их доля — в {@code listing.cache.hit.ratio}.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class ListingCacheService {
+
+    private static final String LISTING_KEY = "listing:%d:%s";
+    private static final String LISTINGS_KEY = "listings:%d";
+    private static final String GENERATION_KEY = "listing-gen:%d:%s";
+
+    static final RedisScript<Long> PUT_SCRIPT = RedisScript.of("""
+            if (redis.call('GET', KEYS[1]) or '0') ~= ARGV[1] then
+                return 0
+            end
+            redis.call('HSET', KEYS[2], ARGV[2], ARGV[3])
+            redis.call('PEXPIRE', KEYS[2], ARGV[4])
+            redis.call('SADD', KEYS[3], ARGV[5])
+            redis.call('PEXPIRE', KEYS[3], ARGV[4])
+            return 1
+            """, Long.class);
+
+    // ключи идут парами: листинг папки и её поколение
+    static final RedisScript<Long> EVICT_SCRIPT = RedisScript.of("""
+            for i = 1, #KEYS, 2 do
+                redis.call('DEL', KEYS[i])
+                redis.call('INCR', KEYS[i + 1])
+                redis.call('PEXPIRE', KEYS[i + 1], ARGV[1])
+            end
+            return #KEYS / 2
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MinioProperties minioProperties;
+    private final MeterRegistry meterRegistry;
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void registerMetrics() {
+        hits = meterRegistry.counter("listing.cache.requests", "result", "hit");
+        misses = meterRegistry.counter("listing.cache.requests", "result", "miss");
+        meterRegistry.gauge("listing.cache.hit.ratio", this, ListingCacheService::hitRatio);
+    }
+
+    public Optional<MinioService.ListingPage> get(Long userId, String path, String variant) {
+        if (!minioProperties.isListingCache()) {
+            return Optional.empty();
+        }
+        try {
+            Object cached = redisTemplate.opsForHash().get(LISTING_KEY.formatted(userId, path), variant);
+            if (cached != null) {
+                MinioService.ListingPage page = objectMapper.readValue((String) cached, MinioService.ListingPage.class);
+                hits.increment();
+                return Optional.of(page);
+            }
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Не удалось прочитать листинг папки {} пользователя {} из кэша", path, userId, e);
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Поколение папки, которое нужно прочитать до запроса в базу и передать в {@link #put}.
+     *
+     * @return {@code null}, если кэш выключен или недоступен: тогда листинг не сохраняется
+     */
+    public String generation(Long userId, String path) {
+        if (!minioProperties.isListingCache()) {
+            return null;
+        }
+        try {
+            String generation = redisTemplate.opsForValue().get(GENERATION_KEY.formatted(userId, path));
+            return generation == null ? "0" : generation;
+        } catch (DataAccessException e) {
+            log.warn("Не удалось прочитать поколение листинга папки {} пользователя {}", path, userId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Сохраняет листинг, если папку не сбрасывали с момента чтения {@code generation}.
+     */
+    public void put(Long userId, String path, String variant, String generation, MinioService.ListingPage page) {
+        if (!minioProperties.isListingCache() || generation == null) {
+            return;
+        }
+        try {
+            Long stored = redisTemplate.execute(PUT_SCRIPT,
+                    List.of(GENERATION_KEY.formatted(userId, path), LISTING_KEY.formatted(userId, path),
+                            LISTINGS_KEY.formatted(userId)),
+                    generation, variant, objectMapper.writeValueAsString(page),
+                    Long.toString(minioProperties.getListingCacheTtl().toMillis()), path);
+            if (stored == null || stored == 0) {
+                log.debug("Листинг папки {} пользователя {} устарел до сохранения", path, userId);
+            }
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Не удалось сохранить листинг папки {} пользователя {} в кэш", path, userId, e);
+        }
+    }
+
+    /**
+     * Ресурс создан: меняются листинги его папки и папок, которые могли быть созданы на пути к нему.
+     */
+    public void added(Long userId, String path) {
+        List<String> folders = new ArrayList<>();
+        for (String folder = NamespaceService.parentOf(path); ; folder = NamespaceService.parentOf(folder)) {
+            folders.add(folder);
+            if (folder.isEmpty()) {
+                break;
+            }
+        }
+        evict(userId, folders);
+    }
+
+    /**
+     * Ресурс удалён: меняется листинг его папки, а листинги удалённых папок больше не нужны.
+     */
+    public void removed(Long userId, String path) {
+        List<String> folders = new ArrayList<>(subtree(userId, path));
+        if (path.endsWith("/") && !folders.contains(path)) {
+            folders.add(path);
+        }
+        folders.add(NamespaceService.parentOf(path));
+        evict(userId, folders);
+    }
+
+    public void moved(Long userId, String from, String to) {
+        removed(userId, from);
+        added(userId, to);
+    }
+
+    /**
+     * Сбрасывает все листинги пользователя, если пространство имён изменилось в обход {@link MinioService}.
+     */
+    public void invalidate(Long userId) {
+        evict(userId, subtree(userId, ""));
+    }
+
+    double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private Set<String> subtree(Long userId, String path) {
+        if (!minioProperties.isListingCache() || !path.isEmpty() && !path.endsWith("/")) {
+            return Set.of();
+        }
+        try {
+            Set<String> cached = redisTemplate.opsForSet().members(LISTINGS_KEY.formatted(userId));
+            if (cached == null) {
+                return Set.of();
+            }
+            cached.removeIf(folder -> !folder.startsWith(path));
+            return cached;
+        } catch (DataAccessException e) {
+            log.warn("Не удалось прочитать кэшированные папки пользователя {}", userId, e);
+            return Set.of();
+        }
+    }
+
+    private void evict(Long userId, Collection<String> folders) {
+        if (!minioProperties.isListingCache() || folders.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(folders.size() * 2);
+        for (String folder : folders) {
+            keys.add(LISTING_KEY.formatted(userId, folder));
+            keys.add(GENERATION_KEY.formatted(userId, folder));
+        }
+        try {
+            redisTemplate.execute(EVICT_SCRIPT, keys, Long.toString(minioProperties.getListingCacheTtl().toMillis()));
+            redisTemplate.opsForSet().remove(LISTINGS_KEY.formatted(userId), folders.toArray());
+        } catch (DataAccessException e) {
+            log.warn("Не удалось сбросить кэш листингов пользователя {}: {}", userId, folders, e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package rita.service;
+
+import org.springframework.data.domain.Sort;
+import rita.repository.ResourceNode;
+import rita.repository.Type;
+
+import javax.validation.ValidationException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Позиция в листинге папки: последний отданный ресурс и значение поля сортировки у него.
+ * <p>
+ * Клиенту передаётся непрозрачной строкой. Сортировка и направление входят в курсор, чтобы продолжение
+ * с другим порядком не выдало пропуски и повторы.
+ */
+public record ListingCursor(String sort, Sort.Direction direction, Type type, String value, String name) {
+
+    public static ListingCursor after(ResourceNode node, String sort, Sort.Direction direction) {
+        String value = switch (sort) {
+            case "size" -> String.valueOf(node.getSize());
+            case "lastModified" -> String.valueOf(node.getLastModified());
+            default -> "";
+        };
+        return new ListingCursor(sort, direction, node.getType(), value, node.getName());
+    }
+
+    /**
+     * @return {@code null}, если листинг начинается сначала
+     */
+    public static ListingCursor decode(String token, String sort, Sort.Direction direction) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split("\n", 5);
+            ListingCursor cursor = new ListingCursor(parts[0], Sort.Direction.valueOf(parts[1]),
+                    Type.valueOf(parts[2]), parts[3], parts[4]);
+            if (!cursor.sort().equals(sort) || cursor.direction() != direction) {
+                throw new ValidationException("Токен продолжения выдан для другой сортировки");
+            }
+            if (cursor.type() == Type.FILE) {
+                // проверяем значение сразу, чтобы ошибка разбора не дошла до запроса
+                cursor.size();
+                cursor.lastModified();
+            }
+            return cursor;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeException e) {
+            throw new ValidationException("Недопустимый токен продолжения");
+        }
+    }
+
+    public String encode() {
+        String value = String.join("\n", sort, direction.name(), type.name(), this.value, name);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    Long size() {
+        return "size".equals(sort) ? Long.valueOf(value) : null;
+    }
+
+    Instant lastModified() {
+        return "lastModified".equals(sort) ? Instant.parse(value) : null;
+    }
+}
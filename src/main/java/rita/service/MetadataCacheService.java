@@ -0,0 +1,253 @@
+package rita.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Двухуровневый кэш записей пространства имён для чтения метаданных ({@code minio.metadata-cache}).
+ * <p>
+ * Ближний уровень — LRU в памяти процесса не больше {@code minio.metadata-cache-size} записей, каждая живёт
+ * {@code minio.metadata-cache-local-ttl}. Общий уровень — хэш {@code metadata:<userId>} в Redis с
+ * {@code minio.metadata-cache-ttl}. Отсутствие ресурса тоже кэшируется.
+ * <p>
+ * Изменения сбрасывают оба уровня у себя и публикуют сброс в канал {@value #CHANNEL}, по которому остальные
+ * узлы чистят свой ближний уровень. Сообщение — строки {@code <userId>:<E|T>:<путь>}: {@code E} сбрасывает один
+ * путь, {@code T} — путь вместе со всем, что под ним. Запись, прочитанная до изменения и сохранённая после
+ * сброса, живёт не дольше TTL своего уровня. Ошибки Redis не ломают чтение: запись читается из базы.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class MetadataCacheService implements MessageListener {
+
+    public static final String CHANNEL = "metadata-invalidation";
+
+    private static final String METADATA_KEY = "metadata:%d";
+    private static final String ABSENT = "";
+
+    private final NamespaceService namespaceService;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MinioProperties minioProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Key, Entry> local = new LinkedHashMap<>(256, 0.75f, true);
+
+    @PostConstruct
+    void registerMetrics() {
+        meterRegistry.gauge("metadata.cache.local.size", local, map -> {
+            synchronized (map) {
+                return map.size();
+            }
+        });
+    }
+
+    public Optional<ResourceNode> find(Long userId, String path) {
+        if (!minioProperties.isMetadataCache()) {
+            return namespaceService.find(userId, path);
+        }
+        Key key = new Key(userId, path);
+        long now = System.nanoTime();
+        synchronized (local) {
+            Entry entry = local.get(key);
+            if (entry != null && entry.expiresAt() - now > 0) {
+                meterRegistry.counter("metadata.cache.requests", "result", "local").increment();
+                return Optional.ofNullable(entry.node());
+            }
+        }
+        Optional<ResourceNode> shared = readShared(userId, path);
+        ResourceNode node;
+        if (shared != null) {
+            meterRegistry.counter("metadata.cache.requests", "result", "redis").increment();
+            node = shared.orElse(null);
+        } else {
+            meterRegistry.counter("metadata.cache.requests", "result", "miss").increment();
+            node = namespaceService.find(userId, path).orElse(null);
+            writeShared(userId, path, node);
+        }
+        putLocal(key, node, now);
+        return Optional.ofNullable(node);
+    }
+
+    public ResourceNode get(Long userId, String path) {
+        return find(userId, path).orElseThrow(() -> new EntityNotFoundException("Ресурс не найден"));
+    }
+
+    public boolean exists(Long userId, String path) {
+        return path.isEmpty() || find(userId, path).isPresent();
+    }
+
+    /**
+     * Ресурс создан: сбрасываются он сам и папки на пути к нему, которые могли быть созданы вместе с ним.
+     */
+    public void added(Long userId, String path) {
+        List<String> scopes = new ArrayList<>();
+        scopes.add(exact(userId, path));
+        for (String folder = NamespaceService.parentOf(path); !folder.isEmpty();
+             folder = NamespaceService.parentOf(folder)) {
+            scopes.add(exact(userId, folder));
+        }
+        publish(scopes);
+    }
+
+    /**
+     * Ресурс удалён: сбрасываются он сам и, если это папка, всё её содержимое.
+     */
+    public void removed(Long userId, String path) {
+        publish(List.of(tree(userId, path)));
+    }
+
+    public void moved(Long userId, String from, String to) {
+        List<String> scopes = new ArrayList<>();
+        scopes.add(tree(userId, from));
+        scopes.add(tree(userId, to));
+        for (String folder = NamespaceService.parentOf(to); !folder.isEmpty();
+             folder = NamespaceService.parentOf(folder)) {
+            scopes.add(exact(userId, folder));
+        }
+        publish(scopes);
+    }
+
+    /**
+     * Сбрасывает все записи пользователя, если пространство имён изменилось в обход {@link MinioService}.
+     */
+    public void invalidate(Long userId) {
+        publish(List.of(tree(userId, "")));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        for (String scope : new String(message.getBody(), StandardCharsets.UTF_8).split("\n")) {
+            evictLocal(scope);
+        }
+    }
+
+    int localSize() {
+        synchronized (local) {
+            return local.size();
+        }
+    }
+
+    private void publish(List<String> scopes) {
+        if (!minioProperties.isMetadataCache()) {
+            return;
+        }
+        scopes.forEach(this::evictLocal);
+        try {
+            scopes.forEach(this::evictShared);
+            redisTemplate.convertAndSend(CHANNEL, String.join("\n", scopes));
+        } catch (DataAccessException e) {
+            log.warn("Не удалось сбросить кэш метаданных {}", scopes, e);
+        }
+    }
+
+    /**
+     * @return {@code null}, если в Redis ничего нет; пустой Optional, если там закэшировано отсутствие ресурса
+     */
+    private Optional<ResourceNode> readShared(Long userId, String path) {
+        try {
+            Object cached = redisTemplate.opsForHash().get(METADATA_KEY.formatted(userId), path);
+            if (cached == null) {
+                return null;
+            }
+            String json = (String) cached;
+            return json.equals(ABSENT) ? Optional.empty() : Optional.of(objectMapper.readValue(json, ResourceNode.class));
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Не удалось прочитать метаданные {} пользователя {} из кэша", path, userId, e);
+            return null;
+        }
+    }
+
+    private void writeShared(Long userId, String path, ResourceNode node) {
+        String key = METADATA_KEY.formatted(userId);
+        try {
+            redisTemplate.opsForHash().put(key, path, node == null ? ABSENT : objectMapper.writeValueAsString(node));
+            redisTemplate.expire(key, minioProperties.getMetadataCacheTtl());
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("Не удалось сохранить метаданные {} пользователя {} в кэш", path, userId, e);
+        }
+    }
+
+    private void putLocal(Key key, ResourceNode node, long now) {
+        synchronized (local) {
+            local.put(key, new Entry(node, now + minioProperties.getMetadataCacheLocalTtl().toNanos()));
+            Iterator<Entry> eldest = local.values().iterator();
+            while (local.size() > minioProperties.getMetadataCacheSize() && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    private void evictLocal(String scope) {
+        String[] parts = scope.split(":", 3);
+        Long userId = Long.valueOf(parts[0]);
+        boolean tree = parts[1].equals("T");
+        String path = parts[2];
+        synchronized (local) {
+            if (!tree) {
+                local.remove(new Key(userId, path));
+                return;
+            }
+            local.keySet().removeIf(key -> key.userId().equals(userId) && key.path().startsWith(path));
+        }
+    }
+
+    private void evictShared(String scope) {
+        String[] parts = scope.split(":", 3);
+        String key = METADATA_KEY.formatted(Long.valueOf(parts[0]));
+        String path = parts[2];
+        if (parts[1].equals("E")) {
+            redisTemplate.opsForHash().delete(key, path);
+        } else if (path.isEmpty()) {
+            redisTemplate.delete(key);
+        } else {
+            Set<Object> cached = redisTemplate.opsForHash().keys(key);
+            Object[] stale = cached.stream().filter(field -> ((String) field).startsWith(path)).toArray();
+            if (stale.length > 0) {
+                redisTemplate.opsForHash().delete(key, stale);
+            }
+        }
+    }
+
+    private static String exact(Long userId, String path) {
+        return userId + ":E:" + path;
+    }
+
+    /**
+     * Файл сбрасывается только сам: иначе вместе с {@code a.txt} ушли бы {@code a.txt.bak} и подобные.
+     */
+    private static String tree(Long userId, String path) {
+        return userId + (path.isEmpty() || path.endsWith("/") ? ":T:" : ":E:") + path;
+    }
+
+    private record Key(Long userId, String path) {
+    }
+
+    /**
+     * @param node {@code null}, если ресурса нет
+     */
+    private record Entry(ResourceNode node, long expiresAt) {
+    }
+}
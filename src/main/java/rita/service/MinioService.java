@@ -1,33 +1,49 @@
 package rita.service;
 
 import io.minio.*;
-import io.minio.messages.Item;
+import io.minio.http.Method;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import rita.dto.DirectoryResponseDto;
+import rita.dto.FileMetadata;
 import rita.dto.MessageDto;
+import rita.dto.PresignedUploadDto;
 import rita.dto.ResourceResponseDto;
+import rita.dto.UploadResultDto;
 import rita.exeptions.EntityAlreadyExistsException;
 import rita.exeptions.MinioException;
+import rita.minio.MinioPresigner;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
 import rita.repository.UserRepository;
 import rita.security.AuthenticationHelperImpl;
 
 import javax.persistence.EntityNotFoundException;
 import javax.validation.ValidationException;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.*;
-
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.Deflater;
 
 import static rita.repository.Type.DIRECTORY;
 import static rita.repository.Type.FILE;
@@ -40,7 +56,21 @@ public class MinioService {
     private final MinioClient minioClient;
     private final NamingService namingService;
     private final AuthenticationHelperImpl authenticationHelper;
+    private final ArchiveService archiveService;
+    private final BulkDeleteService bulkDeleteService;
+    private final MinioPresigner minioPresigner;
+    private final MinioProperties minioProperties;
+    private final ExecutorService minioTaskExecutor;
+    private final NamespaceService namespaceService;
+    private final SearchIndexService searchIndexService;
+    private final ListingCacheService listingCacheService;
+    private final MetadataCacheService metadataCacheService;
     private static final String USER_PREFIX = "user-%d-files/";
+    private static final Set<String> SORT_FIELDS = Set.of("name", "size", "lastModified");
+    private static final int MAX_COMPLETIONS = 50;
+    private static final int MAX_SEARCH_RESULTS = 1000;
+    private static final int SEARCH_BATCH = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
     private static final Set<Character> INVALID_CHARS = Set.of(
             '\\', ':', '*', '?', '"', '\'', '<', '>', '|'
     );
@@ -51,15 +81,122 @@ public class MinioService {
         Long userId = authenticationHelper.getCurrentUserId();
         String path = buildFullPath(clientPath, userId);
 
-        StatObjectResponse statObject;
+        ResourceNode node = metadataCacheService.get(userId, logicalPath(clientPath));
+        return new ResourceResponseDto(
+                path,
+                namingService.getNameFromPath(clientPath),
+                node.getType() == FILE ? node.getSize() : null,
+                node.getType(),
+                node.getEtag(),
+                lastModified(node)
+        );
+    }
+
+    public void deleteResource(String clientPath) {
+
+        Long userId = authenticationHelper.getCurrentUserId();
+        String path = logicalPath(clientPath);
+        namespaceService.get(userId, path);
+
+        BulkDeleteService.Report report = deleteByPrefix(userId, path, processed -> {
+        });
+
+        if (report.failed() > 0) {
+            throw new MinioException("Не удалось удалить " + report.failed() + " объектов: "
+                    + String.join("; ", report.errors().subList(0, Math.min(10, report.errors().size()))));
+        }
+    }
+
+    /**
+     * Возвращает путь ресурса текущего пользователя без префикса пользователя, если такой ресурс существует.
+     */
+    public String resolveExisting(String clientPath) {
+        Long userId = authenticationHelper.getCurrentUserId();
+        metadataCacheService.get(userId, logicalPath(clientPath));
+        return logicalPath(clientPath);
+    }
 
+    long countObjects(Long userId, String path) {
+        return namespaceService.countObjects(userId, path);
+    }
+
+    /**
+     * Удаляет объекты ресурса из Minio, а затем его записи из пространства имён.
+     * Если часть объектов удалить не удалось, записи остаются, и повторное удаление доделает работу.
+     */
+    BulkDeleteService.Report deleteByPrefix(Long userId, String path, LongConsumer progress) {
+        BulkDeleteService.Report report;
         try {
-            statObject = minioClient.statObject(
-                    StatObjectArgs.builder()
-                            .bucket("user-files")
-                            .object(path)
-                            .build()
-            );
+            report = bulkDeleteService.removeAll(namespaceService.storageKeys(userId, path), progress);
+        } catch (MinioException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MinioException("Неизвестная ошибка Minio: " + e.getMessage());
+        }
+        if (report.failed() == 0) {
+            namespaceService.deleteTree(userId, path);
+            searchIndexService.removed(userId, path);
+            listingCacheService.removed(userId, path);
+            metadataCacheService.removed(userId, path);
+        }
+        return report;
+    }
+
+
+    public FileMetadata getFileMetadata(String clientPath) {
+
+        Long userId = authenticationHelper.getCurrentUserId();
+        ResourceNode node = findFile(userId, clientPath);
+        return new FileMetadata(
+                node.getSize(),
+                node.getEtag(),
+                lastModified(node),
+                node.getContentType()
+        );
+    }
+
+    /**
+     * Возвращает короткоживущую подписанную ссылку на файл, чтобы клиент скачал его напрямую из Minio.
+     */
+    public String presignDownload(String clientPath) {
+
+        if (clientPath.contains("..")) {
+            throw new ValidationException("Недопустимо использовать ..");
+        }
+        Long userId = authenticationHelper.getCurrentUserId();
+        ResourceNode node = findFile(userId, clientPath);
+
+        String disposition = ContentDisposition.attachment()
+                .filename(namingService.getNameFromPath(node.getPath()), StandardCharsets.UTF_8)
+                .build()
+                .toString();
+        return minioPresigner.presign(Method.GET, node.getStorageKey(),
+                Map.of("response-content-disposition", disposition));
+    }
+
+    public InputStreamResource downloadResource(String clientPath) {
+        return downloadResource(clientPath, 0, -1);
+    }
+
+    /**
+     * Скачивает файл целиком или его часть, начиная с {@code offset}.
+     * При отрицательной {@code length} читается всё до конца файла.
+     */
+    public InputStreamResource downloadResource(String clientPath, long offset, long length) {
+
+        Long userId = authenticationHelper.getCurrentUserId();
+        ResourceNode node = findFile(userId, clientPath);
+        GetObjectArgs.Builder args = GetObjectArgs.builder()
+                .bucket("user-files")
+                .object(node.getStorageKey());
+        if (offset > 0) {
+            args.offset(offset);
+        }
+        if (length >= 0) {
+            args.length(length);
+        }
+        try {
+            return new InputStreamResource(minioClient.getObject(args.build()));
         } catch (io.minio.errors.ErrorResponseException e) {
             if ("NoSuchKey".equals(e.errorResponse().code())) {
                 throw new EntityNotFoundException("Ресурс не найден");
@@ -68,390 +205,488 @@ public class MinioService {
         } catch (Exception e) {
             throw new MinioException("Не удалось получить информацию о ресурсе", e);
         }
+    }
 
-        if (path.endsWith("/")) {
-            return new ResourceResponseDto(
-                    path,
-                    namingService.getNameFromPath(clientPath),
-                    null,
-                    DIRECTORY
-            );
-        } else {
-            long size = statObject.size();
-            return new ResourceResponseDto(
-                    path,
-                    namingService.getNameFromPath(clientPath),
-                    size,
-                    FILE
-            );
+    public StreamingResponseBody downloadFolder(String clientPath, int level) {
+
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new ValidationException("Уровень сжатия должен быть от 0 до 9");
+        }
+        Long userId = authenticationHelper.getCurrentUserId();
+        String path = logicalPath(clientPath);
+        if (!metadataCacheService.exists(userId, path)) {
+            throw new EntityNotFoundException("Ресурс не найден");
         }
+        return outputStream -> archiveService.writeFolder(userId, path, level, outputStream);
     }
 
-    public void deleteResource(String clientPath) {
+
+    /**
+     * Содержимое папки из пространства имён, отсортированное по {@code sort} ({@code name}, {@code size}
+     * или {@code lastModified}) в направлении {@code order}. Папки всегда идут перед файлами.
+     * <p>
+     * Без {@code limit} и {@code continuationToken} возвращается вся папка. Иначе — страница не длиннее
+     * {@code limit}, продолжающаяся после токена из предыдущей страницы. Листинги кэшируются в
+     * {@link ListingCacheService} и сбрасываются методами, меняющими ресурсы.
+     */
+    public ListingPage showAllFilesFromFolder(String clientPath, String sort, String order, Integer limit,
+                                              String continuationToken) {
+        if (!SORT_FIELDS.contains(sort)) {
+            throw new ValidationException("Недопустимое поле сортировки");
+        }
+        Sort.Direction direction = Sort.Direction.fromOptionalString(order)
+                .orElseThrow(() -> new ValidationException("Недопустимое направление сортировки"));
+        if (limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        boolean paged = limit != null || continuationToken != null;
+        ListingCursor after = ListingCursor.decode(continuationToken, sort, direction);
 
         Long userId = authenticationHelper.getCurrentUserId();
         String path = buildFullPath(clientPath, userId);
-
-        Iterable<Result<Item>> results = minioClient.listObjects(
-                ListObjectsArgs.builder()
-                        .bucket("user-files")
-                        .prefix(path)
-                        .recursive(true)
-                        .build()
-        );
-        boolean hasFiles = false;
-
-        try {
-            for (Result<Item> result : results) {
-                Item item = result.get();
-                hasFiles = true;
-
-                minioClient.removeObject(
-                        RemoveObjectArgs.builder()
-                                .bucket("user-files")
-                                .object(item.objectName())
-                                .build()
-                );
+        String variant = String.join(":", sort, direction.name(), limit == null ? "" : limit.toString(),
+                continuationToken == null ? "" : continuationToken);
+        Optional<ListingPage> cached = listingCacheService.get(userId, logicalPath(clientPath), variant);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        // поколение читается до базы: если папку изменят во время чтения, put не сохранит устаревший листинг
+        String generation = listingCacheService.generation(userId, logicalPath(clientPath));
+
+        List<ResourceNode> nodes;
+        String nextToken = null;
+        long total;
+        if (paged) {
+            int pageSize = limit == null ? MAX_PAGE_SIZE : limit;
+            // на один элемент больше, чтобы узнать, есть ли следующая страница
+            nodes = namespaceService.children(userId, logicalPath(clientPath), sort, direction, after,
+                    pageSize + 1);
+            if (nodes.size() > pageSize) {
+                nodes = nodes.subList(0, pageSize);
+                nextToken = ListingCursor.after(nodes.get(pageSize - 1), sort, direction).encode();
             }
-        } catch (Exception e) {
-            throw new MinioException("Неизвестная ошибка Minio: " + e.getMessage());
+            // первая и единственная страница уже содержит всю папку
+            total = after == null && nextToken == null
+                    ? nodes.size()
+                    : namespaceService.countChildren(userId, logicalPath(clientPath));
+        } else {
+            nodes = namespaceService.children(userId, logicalPath(clientPath), Sort.by(direction, sort));
+            total = nodes.size();
         }
-
-        if (!hasFiles) {
+        // у существующей папки есть собственная запись, поэтому пустой листинг отличается от отсутствующей папки
+        // и проверять существование нужно, только когда листинг пуст
+        if (nodes.isEmpty() && !metadataCacheService.exists(userId, logicalPath(clientPath))) {
             throw new EntityNotFoundException("Ресурс не найден");
         }
+
+        List<ResourceResponseDto> files = new ArrayList<>(nodes.size());
+        for (ResourceNode node : nodes) {
+            files.add(new ResourceResponseDto(
+                    namingService.getParentFolder(path),
+                    namingService.getNameFromPath(node.getPath()),
+                    node.getType() == FILE ? node.getSize() : null,
+                    node.getType(),
+                    node.getEtag(),
+                    lastModified(node)));
+        }
+        ListingPage page = new ListingPage(files, total, nextToken);
+        listingCacheService.put(userId, logicalPath(clientPath), variant, generation, page);
+        return page;
     }
 
 
-    public InputStreamResource downloadResource(String clientPath) {
+    /**
+     * Загружает файлы параллельно, не более {@code minio.upload-file-parallelism} одновременно.
+     * Конфликт или ошибка одного файла не прерывает загрузку остальных: результат возвращается по каждому файлу.
+     */
+    public List<UploadResultDto> uploadFile(List<MultipartFile> multipartFiles, String clientPath) {
 
         Long userId = authenticationHelper.getCurrentUserId();
-        String path = buildFullPath(clientPath, userId);
-        InputStreamResource resource;
+        List<String> paths = new ArrayList<>();
+        for (MultipartFile multipartFile : multipartFiles) {
+            validateName(namingService.getNameFromPath(multipartFile.getOriginalFilename()));
+            paths.add(logicalPath(clientPath) + multipartFile.getOriginalFilename());
+        }
+        Set<String> existing = namespaceService.existing(userId, paths);
+
+        Semaphore inFlight = new Semaphore(Math.max(1, minioProperties.getUploadFileParallelism()));
+        List<CompletableFuture<UploadResultDto>> results = new ArrayList<>();
         try {
-            String fileName = namingService.getNameFromPath(path);
-            boolean isFolder = path.endsWith("/");
-
-            if (!isFolder)
-                try {
-                    resource = new InputStreamResource(minioClient.getObject(
-                            GetObjectArgs.builder()
-                                    .bucket("user-files")
-                                    .object(path)
-                                    .build()
-                    ));
-
-                } catch (io.minio.errors.ErrorResponseException e) {
-                    if ("NoSuchKey".equals(e.errorResponse().code())) {
-                        throw new EntityNotFoundException("Ресурс не найден");
-                    }
-                    throw new MinioException("Неизвестная ошибка Minio: " + e.errorResponse().message());
-                } catch (Exception e) {
-                    throw new MinioException("Не удалось получить информацию о ресурсе", e);
-                }
-            else {
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                ZipOutputStream zipOut = new ZipOutputStream(byteArrayOutputStream);
-                Iterable<Result<Item>> results = minioClient.listObjects(
-                        ListObjectsArgs.builder()
-                                .bucket("user-files")
-                                .prefix(path)
-                                .recursive(true)
-                                .build()
-                );
-                boolean hasFiles = false;
-                for (Result<Item> result : results) {
-
-                    Item item = result.get();
-                    if (item.objectName().equals(path)) {
-                        continue;
-                    }
-                    hasFiles = true;
-
-                    try (InputStream inputStream = minioClient.getObject(
-                            GetObjectArgs.builder()
-                                    .bucket("user-files")
-                                    .object(item.objectName())
-                                    .build()
-                    )) {
-                        String archiveName = namingService.getParentFolder(path) + namingService.getNameFromPath(item.objectName());
-                        ZipEntry zipEntry = new ZipEntry(archiveName);
-                        zipOut.putNextEntry(zipEntry);
-                        inputStream.transferTo(zipOut);
-                        zipOut.closeEntry();
-                    }
-                }
-                if (!hasFiles) {
-                    ZipEntry emptyDir = new ZipEntry(fileName + "/");
-                    zipOut.putNextEntry(emptyDir);
-                    zipOut.closeEntry();
+            for (int i = 0; i < multipartFiles.size(); i++) {
+                MultipartFile multipartFile = multipartFiles.get(i);
+                String path = paths.get(i);
+                if (existing.contains(path)) {
+                    results.add(CompletableFuture.completedFuture(UploadResultDto.failed(
+                            multipartFile.getOriginalFilename(), 409, "Файл с таким именем уже существует")));
+                    continue;
                 }
-                zipOut.close();
+                inFlight.acquire();
+                results.add(CompletableFuture
+                        .supplyAsync(() -> uploadOne(userId, multipartFile, path), minioTaskExecutor)
+                        .whenComplete((result, e) -> inFlight.release()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            results.forEach(result -> result.cancel(true));
+            throw new MinioException("Загрузка прервана", e);
+        }
+        return results.stream().map(CompletableFuture::join).toList();
+    }
 
-                resource = new InputStreamResource
-                        (new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+    private UploadResultDto uploadOne(Long userId, MultipartFile multipartFile, String path) {
 
-            }
+        String fileName = multipartFile.getOriginalFilename();
+        String storageKey = namespaceService.newStorageKey(userId);
+        ObjectWriteResponse response;
+        try (InputStream inputStream = multipartFile.getInputStream()) {
+            response = minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket("user-files")
+                            .object(storageKey)
+                            .stream(inputStream, multipartFile.getSize(), -1)
+                            .contentType(multipartFile.getContentType())
+                            .build());
         } catch (Exception e) {
-            throw new MinioException("Неизвестная ошибка Minio: " + e.getMessage());
+            log.error("Не удалось загрузить файл {}", path, e);
+            return UploadResultDto.failed(fileName, 500, "Неизвестная ошибка при загрузке файла");
+        }
+
+        ResourceNode node;
+        try {
+            node = namespaceService.createFile(userId, path, storageKey, multipartFile.getSize(),
+                    normalizeEtag(response.etag()), multipartFile.getContentType(), Instant.now());
+        } catch (EntityAlreadyExistsException e) {
+            removeObject(storageKey);
+            return UploadResultDto.failed(fileName, 409, "Файл с таким именем уже существует");
+        } catch (Exception e) {
+            log.error("Не удалось сохранить файл {}", path, e);
+            removeObject(storageKey);
+            return UploadResultDto.failed(fileName, 500, "Неизвестная ошибка при загрузке файла");
         }
-        return resource;
+        searchIndexService.added(userId, node);
+        listingCacheService.added(userId, path);
+        metadataCacheService.added(userId, path);
+
+        return UploadResultDto.created(fileName, new ResourceResponseDto(
+                namingService.getParentFolder(prefix(userId) + path),
+                namingService.getNameFromPath(fileName),
+                multipartFile.getSize(),
+                FILE,
+                node.getEtag(),
+                lastModified(node)
+        ));
     }
 
 
-    public List<ResourceResponseDto> showAllFilesFromFolder(String clientPath) {
+    /**
+     * Первый шаг прямой загрузки: проверяет имена так же, как {@link #uploadFile},
+     * и возвращает подписанные POST-формы, по которым клиент загружает файлы сразу в Minio.
+     * Форма ограничивает размер файла и живёт {@code minio.upload-url-expiry}. Тип содержимого в форме
+     * угадывается по имени файла; при подтверждении в пространство имён записывается тип, сохранённый Minio.
+     */
+    public List<PresignedUploadDto> presignUpload(List<String> fileNames, String clientPath) {
 
         Long userId = authenticationHelper.getCurrentUserId();
-        String path = buildFullPath(clientPath, userId);
+        List<PresignedUploadDto> urls = new ArrayList<>();
+
+        for (String fileName : fileNames) {
+            NewObject object = resolveNewObject(clientPath, fileName, userId);
+            String contentType = MediaTypeFactory.getMediaType(fileName)
+                    .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                    .toString();
+            urls.add(new PresignedUploadDto(fileName, minioPresigner.uploadUrl(),
+                    minioPresigner.presignUpload(object.storageKey(), contentType),
+                    NamespaceService.token(object.storageKey())));
+        }
+        return urls;
+    }
 
-        if (!clientPath.isEmpty() && !isFolderExists(path)) {
-            throw new EntityNotFoundException("Ресурс не найден");
+    /**
+     * Проверяет имя нового файла и отсутствие конфликта, возвращает его путь и новый ключ объекта в Minio.
+     */
+    NewObject resolveNewObject(String clientPath, String fileName, Long userId) {
+        validateName(namingService.getNameFromPath(fileName));
+        if (fileName.contains("..")) {
+            throw new ValidationException("Недопустимо использовать ..");
         }
+        String path = logicalPath(clientPath) + fileName;
+        if (namespaceService.exists(userId, path)) {
+            throw new EntityAlreadyExistsException("Файл с таким именем уже существует");
+        }
+        return new NewObject(path, namespaceService.newStorageKey(userId));
+    }
 
-        List<ResourceResponseDto> files = new ArrayList<>();
-        try {
-            Iterable<Result<Item>> results = minioClient.listObjects(
-                    ListObjectsArgs.builder()
-                            .bucket("user-files")
-                            .prefix(path)
-                            .build()
-            );
-            for (Result<Item> result : results) {
-                Item item = result.get();
-                String objectName = item.objectName();
-                if (objectName.equals(path)) {
-                    continue;
-                }
-                String fileName = namingService.getNameFromPath(objectName);
-                files.add(new ResourceResponseDto(namingService.getParentFolder(path), fileName, item.size(),
-                        item.objectName().endsWith("/") ? DIRECTORY : FILE));
+    /**
+     * Регистрирует в пространстве имён объект, уже загруженный в Minio по ключу {@code storageKey}.
+     * Повторная регистрация того же объекта возвращает существующий файл.
+     * Если путь успели занять или объект больше {@code minio.max-upload-size}, загруженный объект удаляется.
+     */
+    ResourceResponseDto registerUploaded(Long userId, String path, String storageKey) {
+
+        Optional<ResourceNode> registered = namespaceService.findByStorageKey(storageKey);
+        if (registered.isPresent() && !registered.get().getPath().equals(path)) {
+            throw new ValidationException("Объект уже зарегистрирован под другим именем");
+        }
+        ResourceNode node;
+        if (registered.isPresent()) {
+            node = registered.get();
+        } else {
+            StatObjectResponse statObject = statObject(storageKey);
+            if (statObject.size() > minioProperties.getMaxUploadSize().toBytes()) {
+                removeObject(storageKey);
+                throw new ValidationException("Файл больше допустимого размера");
             }
-        } catch (Exception e) {
-            throw new MinioException("Неизвестная ошибка Minio: " + e.getMessage());
+            try {
+                node = namespaceService.createFile(userId, path, storageKey, statObject.size(),
+                        normalizeEtag(statObject.etag()), statObject.contentType(),
+                        statObject.lastModified() == null ? Instant.now() : statObject.lastModified().toInstant());
+            } catch (EntityAlreadyExistsException e) {
+                removeObject(storageKey);
+                throw e;
+            }
+            searchIndexService.added(userId, node);
+            listingCacheService.added(userId, path);
+            metadataCacheService.added(userId, path);
         }
-        return files;
+        return new ResourceResponseDto(
+                namingService.getParentFolder(prefix(userId) + path),
+                namingService.getNameFromPath(path),
+                node.getSize(),
+                FILE,
+                node.getEtag(),
+                lastModified(node)
+        );
     }
 
+    /**
+     * Второй шаг прямой загрузки: убеждается, что файлы действительно появились в Minio,
+     * и добавляет их в пространство имён.
+     *
+     * @param tokens токены из ответа {@link #presignUpload}, в том же порядке, что и имена
+     */
+    public List<ResourceResponseDto> confirmUpload(List<String> fileNames, List<String> tokens, String clientPath) {
 
-    public List<ResourceResponseDto> uploadFile(List<MultipartFile> multipartFiles, String clientPath) {
-
+        if (fileNames.size() != tokens.size()) {
+            throw new ValidationException("Количество имён и токенов загрузки не совпадает");
+        }
         Long userId = authenticationHelper.getCurrentUserId();
         List<ResourceResponseDto> files = new ArrayList<>();
 
-        for (MultipartFile multipartFile : multipartFiles) {
-            String fileName = multipartFile.getOriginalFilename();
+        for (int i = 0; i < fileNames.size(); i++) {
+            String fileName = fileNames.get(i);
             validateName(namingService.getNameFromPath(fileName));
-            String fullClientPath = clientPath + fileName;
-            String path = buildFullPath(fullClientPath, userId);
-            boolean exists = false;
-            try {
-                minioClient.statObject(
-                        StatObjectArgs.builder()
-                                .bucket("user-files")
-                                .object(path)
-                                .build()
-                );
-                exists = true;
-
-            } catch (io.minio.errors.ErrorResponseException e) {
-
-                if (!"NoSuchKey".equals(e.errorResponse().code())) {
-                    throw new MinioException(
-                            "Неизвестная ошибка Minio: " + e.errorResponse().message());
-                }
-
-            } catch (Exception e) {
-                throw new MinioException(
-                        "Не удалось получить информацию о ресурсе", e);
-            }
-            if (exists) {
-                throw new EntityAlreadyExistsException("Файл с таким именем уже существует");
-            }
-            try (InputStream inputStream = multipartFile.getInputStream()) {
-                minioClient.putObject(
-                        PutObjectArgs.builder()
-                                .bucket("user-files")
-                                .object(path)
-                                .stream(inputStream, multipartFile.getSize(), -1)
-                                .contentType(multipartFile.getContentType())
-                                .build());
-
-            } catch (Exception e) {
-                throw new MinioException("Неизвестная ошибка Minio: ", e);
+            if (fileName.contains("..")) {
+                throw new ValidationException("Недопустимо использовать ..");
             }
-
-            String displayName = namingService.getNameFromPath(fileName);
-            files.add(new ResourceResponseDto(
-                    namingService.getParentFolder(path),
-                    displayName,
-                    multipartFile.getSize(),
-                    multipartFile.getOriginalFilename().endsWith("/") ? DIRECTORY : FILE
-            ));
+            files.add(registerUploaded(userId, logicalPath(clientPath) + fileName,
+                    namespaceService.storageKey(userId, tokens.get(i))));
         }
         return files;
     }
 
-
+    /**
+     * Перемещает или переименовывает ресурс одним обновлением метаданных: объекты в Minio не копируются.
+     */
     public ResourceResponseDto moveOrRenameResource(String fromClient, String toClient) {
         Long userId = authenticationHelper.getCurrentUserId();
 
-        String from = buildFullPath(fromClient, userId);
-        String to = buildFullPath(toClient, userId);
+        String from = logicalPath(fromClient);
+        String to = logicalPath(toClient);
 
         validateName(namingService.getNameFromPath(toClient));
+        if (from.endsWith("/") != to.endsWith("/")) {
+            throw new ValidationException("Нельзя превратить файл в папку или папку в файл");
+        }
+        if (from.endsWith("/") && to.startsWith(from)) {
+            throw new ValidationException("Нельзя переместить папку внутрь самой себя");
+        }
 
-        boolean notExist = isNotExist(to);
+        ResourceNode node = namespaceService.move(userId, from, to);
+        searchIndexService.moved(userId, from, to);
+        listingCacheService.moved(userId, from, to);
+        metadataCacheService.moved(userId, from, to);
 
-        if (!notExist) {
-            throw new EntityAlreadyExistsException("Файл с таким именем уже существует");
-        }
+        return new ResourceResponseDto(
+                namingService.getParentFolder(prefix(userId) + to),
+                namingService.getNameFromPath(prefix(userId) + to),
+                node.getType() == FILE ? node.getSize() : null,
+                node.getType());
+    }
 
-        try {
-            Iterable<Result<Item>> results = minioClient.listObjects(
-                    ListObjectsArgs.builder()
-                            .bucket("user-files")
-                            .prefix(from)
-                            .recursive(true)
-                            .build()
-            );
-            for (Result<Item> result : results) {
-                Item item = result.get();
-                String oldObject = item.objectName();
-                String relative = oldObject.substring(from.length());
-                String newObject = to + relative;
-
-                minioClient.copyObject(
-                        CopyObjectArgs.builder()
-                                .bucket("user-files")
-                                .object(newObject)
-                                .source(CopySource.builder()
-                                        .bucket("user-files")
-                                        .object(oldObject)
-                                        .build())
-                                .build()
-                );
+    public ResourceResponseDto createEmptyDirectory(String clientPath) {
+        if (!clientPath.endsWith("/")) {
+            clientPath = clientPath + "/";
+        }
+        Long userId = authenticationHelper.getCurrentUserId();
+        String path = buildFullPath(clientPath, userId);
 
-            }
-            for (Result<Item> result : minioClient.listObjects(
-                    ListObjectsArgs.builder()
-                            .bucket("user-files")
-                            .prefix(from)
-                            .recursive(true)
-                            .build()
-            )) {
-                minioClient.removeObject(RemoveObjectArgs.builder()
-                        .bucket("user-files")
-                        .object(result.get().objectName())
-                        .build()
-                );
-            }
+        validateName(namingService.getNameFromPath(clientPath));
+        searchIndexService.added(userId, namespaceService.createDirectory(userId, logicalPath(clientPath)));
+        listingCacheService.added(userId, logicalPath(clientPath));
+        metadataCacheService.added(userId, logicalPath(clientPath));
+
+        String displayName = namingService.getNameFromPath(path);
+        String rootFolder = namingService.getParentFolder(path);
+        return new ResourceResponseDto(
+                rootFolder,
+                displayName,
+                null,
+                DIRECTORY
+        );
+    }
 
+    /**
+     * Страница результатов поиска: сначала точные совпадения имени, затем совпадения начала имени,
+     * затем остальные. Продолжение начинается с {@code cursor} из предыдущей страницы.
+     */
+    public SearchPage searchResource(String query, int limit, String cursor) {
+        List<ResourceResponseDto> files = new ArrayList<>();
+        String nextCursor = streamSearch(query, limit, cursor).writeTo(files::add);
+        return new SearchPage(files, nextCursor);
+    }
 
-            if (from.endsWith("/")) {
-                return new ResourceResponseDto(
-                        namingService.getParentFolder(to),
-                        namingService.getNameFromPath(to),
-                        null,
-                        DIRECTORY);
-            } else {
-                StatObjectResponse info = minioClient.statObject(
-                        StatObjectArgs.builder()
-                                .bucket("user-files")
-                                .object(to)
-                                .build()
-                );
-                return new ResourceResponseDto(
-                        namingService.getParentFolder(to),
-                        namingService.getNameFromPath(to),
-                        info.size(),
-                        FILE);
+    /**
+     * Те же результаты, что и у {@link #searchResource}, но без сборки страницы в памяти: запрос проверяется
+     * сразу, а результаты читаются порциями по {@value #SEARCH_BATCH} только при вызове
+     * {@link SearchStream#writeTo}.
+     */
+    public SearchStream streamSearch(String query, int limit, String cursor) {
+        Long userId = authenticationHelper.getCurrentUserId();
+        validateName(query);
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new ValidationException("Количество результатов должно быть от 1 до " + MAX_SEARCH_RESULTS);
+        }
+        SearchCursor start = SearchCursor.decode(cursor);
+        String needle = query.toLowerCase(Locale.ROOT);
+        return sink -> {
+            SearchCursor after = start;
+            int remaining = limit;
+            while (true) {
+                int batch = Math.min(remaining, SEARCH_BATCH);
+                SearchCursor position = after;
+                // на один результат больше, чтобы узнать, есть ли продолжение
+                List<ResourceNode> found = searchIndexService.search(userId, query, position, batch + 1)
+                        .orElseGet(() -> namespaceService.search(userId, query, position, batch + 1));
+                for (ResourceNode node : found.subList(0, Math.min(found.size(), batch))) {
+                    sink.accept(searchResult(userId, node));
+                }
+                if (found.size() <= batch) {
+                    return null;
+                }
+                ResourceNode last = found.get(batch - 1);
+                after = new SearchCursor(SearchCursor.rankOf(last.getName().toLowerCase(Locale.ROOT), needle),
+                        last.getPath());
+                remaining -= batch;
+                if (remaining == 0) {
+                    return after.encode();
+                }
             }
+        };
+    }
 
-        } catch (Exception e) {
-            throw new MinioException("Неизвестная ошибка Minio: ", e);
+    private ResourceResponseDto searchResult(Long userId, ResourceNode node) {
+        String objectName = prefix(userId) + node.getPath();
+        String parentFolder = namingService.getParentFolder(objectName);
+        if (parentFolder.equals(namingService.getNameFromPath(objectName))) {
+            parentFolder = namingService.getNameFromPath(objectName).replaceAll("[^/]", "");
         }
+        return new ResourceResponseDto(
+                parentFolder,
+                namingService.getNameFromPath(objectName),
+                node.getType() == FILE ? node.getSize() : null,
+                node.getType()
+        );
     }
 
-    public ResourceResponseDto createEmptyDirectory(String clientPath) {
+
+    /**
+     * Автодополнение: первые {@code limit} имён файлов и папок пользователя, начинающихся с {@code prefix}.
+     */
+    public List<String> autocomplete(String prefix, int limit) {
         Long userId = authenticationHelper.getCurrentUserId();
-        String path = buildFullPath(clientPath, userId);
+        if (prefix == null || prefix.isBlank()) {
+            throw new ValidationException("Префикс не может быть пустым");
+        }
+        if (limit < 1 || limit > MAX_COMPLETIONS) {
+            throw new ValidationException("Количество подсказок должно быть от 1 до " + MAX_COMPLETIONS);
+        }
+        return searchIndexService.complete(userId, prefix, limit)
+                .orElseGet(() -> namespaceService.complete(userId, prefix, limit));
+    }
 
-        validateName(namingService.getNameFromPath(clientPath));
-        boolean notExist = isNotExist(path);
-        if (!notExist) {
-            throw new EntityAlreadyExistsException("Файл с таким именем уже существует");
+    /**
+     * ETag листинга папки, вычисленный из имён, размеров и ETag дочерних объектов.
+     * Меняется при любом добавлении, удалении или изменении объекта в папке.
+     */
+    public String listingEtag(List<ResourceResponseDto> files) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (ResourceResponseDto file : files) {
+            fingerprint.append(file.getName()).append('|')
+                    .append(file.getType()).append('|')
+                    .append(file.getSize()).append('|')
+                    .append(file.getEtag()).append('\n');
         }
+        return DigestUtils.md5DigestAsHex(fingerprint.toString().getBytes(StandardCharsets.UTF_8));
+    }
 
-        try {
-                InputStream emptyFolder = new ByteArrayInputStream(new byte[]{});
-                minioClient.putObject(
-                        PutObjectArgs.builder()
-                                .bucket("user-files")
-                                .object(path)
-                                .stream(emptyFolder, 0, 0)
-                                .build()
-                );
-
-                String displayName = namingService.getNameFromPath(path);
-                String rootFolder = namingService.getParentFolder(path);
-                return new ResourceResponseDto(
-                                rootFolder,
-                                displayName,
-                                null,
-                                DIRECTORY
-                        );
+    private String normalizeEtag(String etag) {
+        return etag == null ? null : etag.replace("\"", "");
+    }
+
+    private ZonedDateTime lastModified(ResourceNode node) {
+        return node.getLastModified() == null ? null : node.getLastModified().atZone(ZoneOffset.UTC);
+    }
 
+    private ResourceNode findFile(Long userId, String clientPath) {
+        ResourceNode node = metadataCacheService.get(userId, logicalPath(clientPath));
+        if (node.getType() != FILE) {
+            throw new EntityNotFoundException("Ресурс не найден");
+        }
+        return node;
+    }
+
+    private void removeObject(String storageKey) {
+        try {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket("user-files")
+                            .object(storageKey)
+                            .build()
+            );
         } catch (Exception e) {
-            throw new MinioException("Неизвестная ошибка Minio: ", e);
+            log.warn("Не удалось удалить объект {}", storageKey, e);
         }
     }
 
-    public List<ResourceResponseDto> searchResource(String query) {
-        Long userId = authenticationHelper.getCurrentUserId();
-        String path = buildFullPath("", userId);
-        validateName(query);
-        query = query.toLowerCase();
-        List<ResourceResponseDto> files = new ArrayList<>();
+    private StatObjectResponse statObject(String path) {
         try {
-            Iterable<Result<Item>> results = minioClient.listObjects(
-                    ListObjectsArgs.builder()
+            return minioClient.statObject(
+                    StatObjectArgs.builder()
                             .bucket("user-files")
-                            .prefix(path)
-                            .recursive(true)
+                            .object(path)
                             .build()
             );
-            for (Result<Item> result : results) {
-
-                if (result.get().objectName().toLowerCase().contains(query)) {
-                    String parentFolder = namingService.getParentFolder(result.get().objectName());
-                    if (parentFolder.equals(namingService.getNameFromPath(result.get().objectName()))) {
-                        parentFolder = namingService.getNameFromPath(result.get().objectName()).replaceAll("[^/]", "");
-                    }
-                    files.add(new ResourceResponseDto(
-                            parentFolder,
-                            namingService.getNameFromPath(result.get().objectName()),
-                            result.get().size(),
-                            result.get().objectName().endsWith("/") ? DIRECTORY : FILE
-                    ));
-                }
+        } catch (io.minio.errors.ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                throw new EntityNotFoundException("Ресурс не найден");
             }
+            throw new MinioException("Неизвестная ошибка Minio: " + e.errorResponse().message());
         } catch (Exception e) {
-            throw new MinioException("Неизвестная ошибка Minio: ", e);
+            throw new MinioException("Не удалось получить информацию о ресурсе", e);
         }
-        return files;
     }
 
-
     private String prefix(Long userId) {
         return USER_PREFIX.formatted(userId);
     }
 
 
+    private String logicalPath(String clientPath) {
+        return clientPath.startsWith("/") ? clientPath.substring(1) : clientPath;
+    }
+
     private String buildFullPath(String clientPath, Long userId) {
-        if (clientPath.startsWith("/")) {
-            clientPath = clientPath.substring(1);
-        }
-        return prefix(userId) + clientPath;
+        return prefix(userId) + logicalPath(clientPath);
     }
 
     private void validateName(String name) {
@@ -484,58 +719,34 @@ public class MinioService {
         }
     }
 
-    private boolean isNotExist(String path) {
-        try {
-            minioClient.statObject(
-                    StatObjectArgs.builder()
-                            .bucket("user-files")
-                            .object(path)
-                            .build()
-            );
-            return false;
-
-        } catch (io.minio.errors.ErrorResponseException ex) {
+    /**
+     * Новый файл: путь в пространстве имён и ключ, под которым его содержимое ляжет в Minio.
+     */
+    record NewObject(String path, String storageKey) {
+    }
 
-            if ("NoSuchKey".equals(ex.errorResponse().code())) {
-                return true;
-            }
+    /**
+     * @param nextCursor курсор следующей страницы или {@code null}, если страница последняя
+     */
+    public record SearchPage(List<ResourceResponseDto> resources, String nextCursor) {
+    }
 
-            throw new MinioException(
-                    "Ошибка Minio: " + ex.errorResponse().message(), ex);
+    /**
+     * Результаты поиска, которые читаются по мере записи.
+     */
+    @FunctionalInterface
+    public interface SearchStream {
 
-        } catch (Exception e) {
-            throw new MinioException("Ошибка проверки существования объекта", e);
-        }
+        /**
+         * @return курсор следующей страницы или {@code null}, если результаты закончились
+         */
+        String writeTo(Consumer<ResourceResponseDto> sink);
     }
 
-    boolean isFolderExists(String path) {
-        try {
-            Iterable<Result<Item>> results = minioClient.listObjects(
-                    ListObjectsArgs.builder()
-                            .bucket("user-files")
-                            .prefix(path)
-                            .build()
-            );
-            boolean isFolder = path.endsWith("/");
-            for (Result<Item> result : results) {
-                Item item = result.get();
-                String name = item.objectName();
-                if (isFolder) {
-                    if (name.startsWith(path)) {
-                        return true;
-                    } else return false;
-                } else {
-                    if (namingService.getParentFolder(name).equals(namingService.getParentFolder(path))) {
-                        return true;
-                    }
-                }
-            }
-        } catch (
-                Exception e) {
-            return false;
-        }
-        return false;
+    /**
+     * @param total             количество элементов во всей папке
+     * @param continuationToken токен следующей страницы или {@code null}, если страница последняя
+     */
+    public record ListingPage(List<ResourceResponseDto> resources, long total, String continuationToken) {
     }
 }
-
-
@@ -0,0 +1,289 @@
+package rita.service;
+
+import rita.repository.ResourceNode;
+import rita.repository.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Триграммный инвертированный индекс имён ресурсов одного пользователя.
+ * <p>
+ * Ресурсы лежат в параллельных массивах по номеру слота, списки вхождений триграмм — в возрастающих массивах
+ * {@code int}. Имена вместе с признаком папки дополнительно лежат в {@link NameTrie} для автодополнения.
+ * Удалённый слот только помечается пустым; когда пустых слотов становится больше занятых, индекс
+ * пересобирается. Класс не потокобезопасен: вызывающий синхронизируется на экземпляре.
+ */
+class NameIndex {
+
+    private static final int ENTRY_OVERHEAD = 160;
+    private static final int POSTINGS_OVERHEAD = 96;
+
+    private String[] paths = new String[16];
+    private String[] names = new String[16];
+    private boolean[] directories = new boolean[16];
+    private long[] sizes = new long[16];
+    private int count;
+    private int live;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private NameTrie trie = new NameTrie();
+    private volatile long bytes;
+
+    /**
+     * Добавляет или заменяет ресурс, а заодно недостающие папки на пути к нему.
+     */
+    void add(String path, Type type, Long size) {
+        remove(path, false);
+        addParents(path);
+        put(path, type == Type.DIRECTORY, size == null ? -1 : size);
+    }
+
+    /**
+     * Удаляет ресурс, а если это папка — и всё её содержимое.
+     */
+    void remove(String path) {
+        remove(path, path.endsWith("/"));
+        compactIfSparse();
+    }
+
+    void move(String from, String to) {
+        List<Integer> moved = matching(from, from.endsWith("/"));
+        List<String> movedPaths = new ArrayList<>(moved.size());
+        for (int slot : moved) {
+            movedPaths.add(to + paths[slot].substring(from.length()));
+        }
+        addParents(to);
+        for (int i = 0; i < moved.size(); i++) {
+            int slot = moved.get(i);
+            boolean directory = directories[slot];
+            long size = sizes[slot];
+            clear(slot);
+            remove(movedPaths.get(i), false);
+            put(movedPaths.get(i), directory, size);
+        }
+        compactIfSparse();
+    }
+
+    /**
+     * Первые {@code limit} ресурсов после {@code after}, в имени которых встречается {@code query} без учёта
+     * регистра, в порядке {@link SearchCursor}. Совпадения проходят через ограниченную кучу, поэтому память
+     * зависит от {@code limit}, а не от числа совпадений.
+     */
+    List<ResourceNode> search(String query, SearchCursor after, int limit) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        // на вершине кучи худший из отобранных: новый кандидат вытесняет его, только если он лучше
+        PriorityQueue<SearchCursor> best = new PriorityQueue<>(Comparator.reverseOrder());
+        if (needle.length() < 3) {
+            for (int slot = 0; slot < count; slot++) {
+                offer(best, slot, needle, after, limit);
+            }
+        } else {
+            // проверяем кандидатов из самого короткого списка: остальные триграммы покроет contains
+            Postings candidates = null;
+            for (int i = 0; i + 3 <= needle.length(); i++) {
+                Postings list = postings.get(trigram(needle, i));
+                if (list == null) {
+                    return List.of();
+                }
+                if (candidates == null || list.size < candidates.size) {
+                    candidates = list;
+                }
+            }
+            for (int i = 0; i < candidates.size; i++) {
+                offer(best, candidates.slots[i], needle, after, limit);
+            }
+        }
+        List<SearchCursor> ranked = new ArrayList<>(best);
+        ranked.sort(null);
+        List<ResourceNode> found = new ArrayList<>(ranked.size());
+        for (SearchCursor position : ranked) {
+            found.add(node(slots.get(position.path())));
+        }
+        return found;
+    }
+
+    /**
+     * Первые по алфавиту {@code limit} различных имён, начинающихся с {@code prefix} без учёта регистра;
+     * имена папок заканчиваются на "/".
+     */
+    List<String> complete(String prefix, int limit) {
+        return trie.complete(prefix.toLowerCase(Locale.ROOT), limit);
+    }
+
+    int size() {
+        return live;
+    }
+
+    /**
+     * Приблизительный объём памяти, занятый индексом, в байтах.
+     */
+    long bytes() {
+        return bytes + trie.bytes();
+    }
+
+    private void offer(PriorityQueue<SearchCursor> best, int slot, String needle, SearchCursor after, int limit) {
+        if (paths[slot] == null || !names[slot].contains(needle)) {
+            return;
+        }
+        SearchCursor position = new SearchCursor(SearchCursor.rankOf(names[slot], needle), paths[slot]);
+        if (position.compareTo(after) <= 0) {
+            return;
+        }
+        if (best.size() < limit) {
+            best.add(position);
+        } else if (position.compareTo(best.peek()) < 0) {
+            best.poll();
+            best.add(position);
+        }
+    }
+
+    private void addParents(String path) {
+        int slash = path.indexOf('/');
+        while (slash >= 0 && slash < path.length() - 1) {
+            String directory = path.substring(0, slash + 1);
+            if (!slots.containsKey(directory)) {
+                put(directory, true, -1);
+            }
+            slash = path.indexOf('/', slash + 1);
+        }
+    }
+
+    private void put(String path, boolean directory, long size) {
+        if (count == paths.length) {
+            int capacity = count * 2;
+            paths = Arrays.copyOf(paths, capacity);
+            names = Arrays.copyOf(names, capacity);
+            directories = Arrays.copyOf(directories, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        int slot = count++;
+        String name = NamespaceService.nameOf(path).toLowerCase(Locale.ROOT);
+        paths[slot] = path;
+        names[slot] = name;
+        directories[slot] = directory;
+        sizes[slot] = size;
+        slots.put(path, slot);
+        live++;
+        String display = NamespaceService.nameOf(path) + (directory ? "/" : "");
+        trie.add(display.toLowerCase(Locale.ROOT), display);
+        long added = entryBytes(path, name);
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            Postings list = postings.get(trigram(name, i));
+            if (list == null) {
+                list = new Postings();
+                postings.put(trigram(name, i), list);
+                added += POSTINGS_OVERHEAD;
+            }
+            added += list.add(slot);
+        }
+        bytes += added;
+    }
+
+    private void remove(String path, boolean withDescendants) {
+        for (int slot : matching(path, withDescendants)) {
+            clear(slot);
+        }
+    }
+
+    private List<Integer> matching(String path, boolean withDescendants) {
+        List<Integer> matching = new ArrayList<>();
+        if (!withDescendants) {
+            Integer slot = slots.get(path);
+            if (slot != null) {
+                matching.add(slot);
+            }
+            return matching;
+        }
+        for (int slot = 0; slot < count; slot++) {
+            if (paths[slot] != null && paths[slot].startsWith(path)) {
+                matching.add(slot);
+            }
+        }
+        return matching;
+    }
+
+    private void clear(int slot) {
+        bytes -= entryBytes(paths[slot], names[slot]);
+        slots.remove(paths[slot]);
+        trie.remove(names[slot] + (directories[slot] ? "/" : ""));
+        paths[slot] = null;
+        names[slot] = null;
+        live--;
+    }
+
+    private void compactIfSparse() {
+        if (count - live <= Math.max(live, 64)) {
+            return;
+        }
+        String[] oldPaths = paths;
+        boolean[] oldDirectories = directories;
+        long[] oldSizes = sizes;
+        int oldCount = count;
+        int capacity = Math.max(16, live * 2);
+        paths = new String[capacity];
+        names = new String[capacity];
+        directories = new boolean[capacity];
+        sizes = new long[capacity];
+        count = 0;
+        live = 0;
+        bytes = 0;
+        slots.clear();
+        postings.clear();
+        trie = new NameTrie();
+        for (int slot = 0; slot < oldCount; slot++) {
+            if (oldPaths[slot] != null) {
+                put(oldPaths[slot], oldDirectories[slot], oldSizes[slot]);
+            }
+        }
+    }
+
+    private ResourceNode node(int slot) {
+        return ResourceNode.builder()
+                .path(paths[slot])
+                .name(NamespaceService.nameOf(paths[slot]))
+                .type(directories[slot] ? Type.DIRECTORY : Type.FILE)
+                .size(sizes[slot] < 0 ? null : sizes[slot])
+                .build();
+    }
+
+    private static long entryBytes(String path, String name) {
+        return ENTRY_OVERHEAD + 2L * (path.length() + name.length());
+    }
+
+    private static long trigram(String value, int from) {
+        return (long) value.charAt(from) << 32 | (long) value.charAt(from + 1) << 16 | value.charAt(from + 2);
+    }
+
+    /**
+     * Возрастающий список слотов, в именах которых встречается триграмма.
+     */
+    private static final class Postings {
+
+        private int[] slots = new int[4];
+        private int size;
+
+        /**
+         * @return на сколько байт вырос список
+         */
+        long add(int slot) {
+            // одна триграмма может встретиться в имени несколько раз, слот при этом всегда последний
+            if (size > 0 && slots[size - 1] == slot) {
+                return 0;
+            }
+            long grown = 0;
+            if (size == slots.length) {
+                grown = 4L * size;
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+            return grown;
+        }
+    }
+}
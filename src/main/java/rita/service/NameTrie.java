@@ -0,0 +1,206 @@
+package rita.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Сжатое префиксное дерево (radix trie) имён для автодополнения.
+ * <p>
+ * Узлы хранятся в параллельных массивах {@code int}, метки рёбер — отрезками общего массива {@code char}, так что
+ * на узел приходится несколько примитивов вместо отдельного объекта. Дети узла связаны списком в порядке первого
+ * символа, поэтому обход в глубину выдаёт имена по возрастанию. Удаление только уменьшает счётчик имени: пустые
+ * узлы остаются до пересборки владельцем. Класс не потокобезопасен.
+ */
+class NameTrie {
+
+    private static final int ROOT = 0;
+
+    private char[] labels = new char[256];
+    private int labelsSize;
+    private int[] labelStart = new int[16];
+    private int[] labelLength = new int[16];
+    private int[] firstChild = new int[16];
+    private int[] nextSibling = new int[16];
+    private int[] counts = new int[16];
+    private String[] values = new String[16];
+    private int nodes = 1;
+    private long valueBytes;
+
+    NameTrie() {
+        firstChild[ROOT] = -1;
+        nextSibling[ROOT] = -1;
+    }
+
+    /**
+     * Добавляет ключ; {@code value} — то, что вернёт {@link #complete}, если ключ встретился впервые.
+     */
+    void add(String key, String value) {
+        int node = ROOT;
+        int matched = 0;
+        while (matched < key.length()) {
+            int child = findChild(node, key.charAt(matched));
+            if (child < 0) {
+                int leaf = newNode(appendLabel(key, matched), key.length() - matched);
+                linkChild(node, leaf);
+                node = leaf;
+                break;
+            }
+            int common = commonPrefix(child, key, matched);
+            if (common < labelLength[child]) {
+                split(child, common);
+            }
+            node = child;
+            matched += common;
+        }
+        if (counts[node]++ == 0) {
+            values[node] = value;
+            valueBytes += 40 + 2L * value.length();
+        }
+    }
+
+    void remove(String key) {
+        int node = find(key, true);
+        if (node < 0 || counts[node] == 0) {
+            return;
+        }
+        if (--counts[node] == 0) {
+            valueBytes -= 40 + 2L * values[node].length();
+            values[node] = null;
+        }
+    }
+
+    /**
+     * Первые по порядку {@code limit} значений, ключи которых начинаются с {@code prefix}.
+     */
+    List<String> complete(String prefix, int limit) {
+        List<String> found = new ArrayList<>(limit);
+        int node = find(prefix, false);
+        if (node >= 0) {
+            collect(node, limit, found);
+        }
+        return found;
+    }
+
+    /**
+     * Приблизительный объём памяти, занятый деревом, в байтах.
+     */
+    long bytes() {
+        return 2L * labels.length + 28L * labelStart.length + valueBytes;
+    }
+
+    /**
+     * @param exact искать узел ровно этого ключа, а не первый узел, чей путь начинается с него
+     */
+    private int find(String key, boolean exact) {
+        int node = ROOT;
+        int matched = 0;
+        while (matched < key.length()) {
+            int child = findChild(node, key.charAt(matched));
+            if (child < 0) {
+                return -1;
+            }
+            int common = commonPrefix(child, key, matched);
+            if (common < labelLength[child]) {
+                return !exact && matched + common == key.length() ? child : -1;
+            }
+            node = child;
+            matched += common;
+        }
+        return node;
+    }
+
+    private void collect(int node, int limit, List<String> found) {
+        if (counts[node] > 0) {
+            found.add(values[node]);
+        }
+        for (int child = firstChild[node]; child >= 0 && found.size() < limit; child = nextSibling[child]) {
+            collect(child, limit, found);
+        }
+    }
+
+    private int findChild(int node, char first) {
+        for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+            char label = labels[labelStart[child]];
+            if (label == first) {
+                return child;
+            }
+            if (label > first) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private void linkChild(int parent, int child) {
+        char first = labels[labelStart[child]];
+        int previous = -1;
+        int next = firstChild[parent];
+        while (next >= 0 && labels[labelStart[next]] < first) {
+            previous = next;
+            next = nextSibling[next];
+        }
+        nextSibling[child] = next;
+        if (previous < 0) {
+            firstChild[parent] = child;
+        } else {
+            nextSibling[previous] = child;
+        }
+    }
+
+    private int commonPrefix(int node, String key, int from) {
+        int start = labelStart[node];
+        int length = Math.min(labelLength[node], key.length() - from);
+        int common = 0;
+        while (common < length && labels[start + common] == key.charAt(from + common)) {
+            common++;
+        }
+        return common;
+    }
+
+    /**
+     * Делит ребро узла после {@code at} символов: узел остаётся на месте среди братьев,
+     * а его хвост, счётчик и дети переходят к новому единственному ребёнку.
+     */
+    private void split(int node, int at) {
+        int rest = newNode(labelStart[node] + at, labelLength[node] - at);
+        firstChild[rest] = firstChild[node];
+        counts[rest] = counts[node];
+        values[rest] = values[node];
+        labelLength[node] = at;
+        firstChild[node] = rest;
+        counts[node] = 0;
+        values[node] = null;
+    }
+
+    private int newNode(int start, int length) {
+        if (nodes == labelStart.length) {
+            int capacity = nodes * 2;
+            labelStart = Arrays.copyOf(labelStart, capacity);
+            labelLength = Arrays.copyOf(labelLength, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        int node = nodes++;
+        labelStart[node] = start;
+        labelLength[node] = length;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        counts[node] = 0;
+        values[node] = null;
+        return node;
+    }
+
+    private int appendLabel(String key, int from) {
+        int length = key.length() - from;
+        if (labelsSize + length > labels.length) {
+            labels = Arrays.copyOf(labels, Math.max(labels.length * 2, labelsSize + length));
+        }
+        key.getChars(from, key.length(), labels, labelsSize);
+        int start = labelsSize;
+        labelsSize += length;
+        return start;
+    }
+}
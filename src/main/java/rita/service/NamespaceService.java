@@ -0,0 +1,379 @@
+package rita.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import rita.exeptions.EntityAlreadyExistsException;
+import rita.repository.ResourceNode;
+import rita.repository.ResourceNodeRepository;
+import rita.repository.Type;
+
+import javax.persistence.EntityNotFoundException;
+import javax.validation.ValidationException;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Логическое пространство имён пользователя поверх таблицы {@code resource}.
+ * <p>
+ * Пользовательский путь отделён от ключа объекта в Minio: новые файлы получают неизменяемый ключ
+ * {@code user-<id>-objects/<uuid>}, поэтому перемещение и переименование сводятся к одному UPDATE путей,
+ * а объекты в хранилище не копируются. Промежуточные папки создаются автоматически.
+ * Пути хранятся относительно корня пользователя, без ведущего {@code /}; корень — пустая строка.
+ */
+@Service
+@RequiredArgsConstructor
+public class NamespaceService {
+
+    private static final String STORAGE_PREFIX = "user-%d-objects/";
+    private static final int PAGE_SIZE = 1000;
+
+    private final ResourceNodeRepository resourceNodeRepository;
+
+    public Optional<ResourceNode> find(Long userId, String path) {
+        return resourceNodeRepository.findByUserIdAndPath(userId, path);
+    }
+
+    public ResourceNode get(Long userId, String path) {
+        return find(userId, path).orElseThrow(() -> new EntityNotFoundException("Ресурс не найден"));
+    }
+
+    public boolean exists(Long userId, String path) {
+        return path.isEmpty() || resourceNodeRepository.existsByUserIdAndPath(userId, path);
+    }
+
+    /**
+     * Возвращает те из {@code paths}, что уже заняты, одним запросом.
+     */
+    public Set<String> existing(Long userId, Collection<String> paths) {
+        Set<String> existing = new HashSet<>();
+        for (ResourceNode node : resourceNodeRepository.findByUserIdAndPathIn(userId, new HashSet<>(paths))) {
+            existing.add(node.getPath());
+        }
+        return existing;
+    }
+
+    /**
+     * Содержимое папки: сначала папки, затем файлы, внутри групп — в порядке {@code sort}.
+     */
+    public List<ResourceNode> children(Long userId, String path, Sort sort) {
+        Sort order = Sort.by("type").and(sort);
+        if (sort.getOrderFor("name") == null) {
+            order = order.and(Sort.by("name"));
+        }
+        return resourceNodeRepository.findByUserIdAndParentPath(userId, path, order);
+    }
+
+    /**
+     * Страница содержимого папки в том же порядке, что и {@link #children(Long, String, Sort)}, начиная после
+     * {@code after}. Каждый запрос продолжает с индексированного ключа, поэтому глубина страницы не влияет
+     * на её стоимость.
+     *
+     * @param after {@code null} для первой страницы
+     */
+    public List<ResourceNode> children(Long userId, String path, String sort, Sort.Direction direction,
+                                       ListingCursor after, int limit) {
+        List<ResourceNode> page = new ArrayList<>(limit);
+        if (after == null || after.type() == Type.DIRECTORY) {
+            // у папок нет размера и даты изменения, поэтому вне сортировки по имени они идут по имени
+            Sort.Direction byName = "name".equals(sort) ? direction : Sort.Direction.ASC;
+            PageRequest request = PageRequest.of(0, limit, Sort.by(byName, "name"));
+            page.addAll(after == null
+                    ? resourceNodeRepository.findByUserIdAndParentPathAndType(userId, path, Type.DIRECTORY, request)
+                    : resourceNodeRepository.findChildrenAfterName(userId, path, Type.DIRECTORY, after.name(),
+                    byName == Sort.Direction.DESC, request));
+            after = null;
+        }
+        if (page.size() == limit) {
+            return page;
+        }
+        Sort order = "name".equals(sort) ? Sort.by(direction, "name") : Sort.by(direction, sort).and(Sort.by("name"));
+        PageRequest request = PageRequest.of(0, limit - page.size(), order);
+        boolean desc = direction == Sort.Direction.DESC;
+        if (after == null) {
+            page.addAll(resourceNodeRepository.findByUserIdAndParentPathAndType(userId, path, Type.FILE, request));
+        } else if ("size".equals(sort)) {
+            page.addAll(resourceNodeRepository.findChildrenAfterSize(userId, path, Type.FILE, after.size(),
+                    after.name(), desc, request));
+        } else if ("lastModified".equals(sort)) {
+            page.addAll(resourceNodeRepository.findChildrenAfterLastModified(userId, path, Type.FILE,
+                    after.lastModified(), after.name(), desc, request));
+        } else {
+            page.addAll(resourceNodeRepository.findChildrenAfterName(userId, path, Type.FILE, after.name(), desc,
+                    request));
+        }
+        return page;
+    }
+
+    public long countChildren(Long userId, String path) {
+        return resourceNodeRepository.countByUserIdAndParentPath(userId, path);
+    }
+
+    /**
+     * Первые {@code limit} ресурсов после {@code after}, в имени которых встречается {@code query} без учёта
+     * регистра, в порядке {@link SearchCursor}. Ранги читаются по очереди отдельными запросами, так что
+     * чтение останавливается, как только набралось {@code limit} результатов.
+     */
+    public List<ResourceNode> search(Long userId, String query, SearchCursor after, int limit) {
+        String needle = escapeLike(query.toLowerCase(Locale.ROOT));
+        // для каждого ранга: шаблон совпадения и шаблон более высокого ранга, который нужно исключить
+        String[][] ranks = {
+                {needle, ""},
+                {needle + "%", needle},
+                {"%" + needle + "%", needle + "%"}
+        };
+        List<ResourceNode> found = new ArrayList<>(limit);
+        for (int rank = after.rank(); rank < ranks.length && found.size() < limit; rank++) {
+            found.addAll(resourceNodeRepository.searchByName(userId, ranks[rank][0], ranks[rank][1],
+                    rank == after.rank() ? after.path() : "", limit - found.size()));
+        }
+        return found;
+    }
+
+    /**
+     * Имена, начинающиеся с {@code prefix} без учёта регистра; имена папок заканчиваются на "/".
+     */
+    public List<String> complete(Long userId, String prefix, int limit) {
+        return resourceNodeRepository.completeName(userId, escapeLike(prefix.toLowerCase(Locale.ROOT)) + "%", limit)
+                .stream()
+                .map(row -> row[0] + (Type.DIRECTORY.name().equals(row[1]) ? "/" : ""))
+                .toList();
+    }
+
+    public String newStorageKey(Long userId) {
+        return STORAGE_PREFIX.formatted(userId) + UUID.randomUUID();
+    }
+
+    public String storageKey(Long userId, String token) {
+        try {
+            return STORAGE_PREFIX.formatted(userId) + UUID.fromString(token);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Недопустимый токен загрузки");
+        }
+    }
+
+    public static String token(String storageKey) {
+        return storageKey.substring(storageKey.lastIndexOf('/') + 1);
+    }
+
+    public Optional<ResourceNode> findByStorageKey(String storageKey) {
+        return resourceNodeRepository.findByStorageKey(storageKey);
+    }
+
+    @Transactional
+    public ResourceNode createDirectory(Long userId, String path) {
+        return create(userId, path, Type.DIRECTORY, null, null, null, null, null);
+    }
+
+    @Transactional
+    public ResourceNode createFile(Long userId, String path, String storageKey, long size, String etag,
+                                   String contentType, Instant lastModified) {
+        return create(userId, path, Type.FILE, storageKey, size, etag, contentType, lastModified);
+    }
+
+    private ResourceNode create(Long userId, String path, Type type, String storageKey, Long size, String etag,
+                                String contentType, Instant lastModified) {
+        if (exists(userId, path)) {
+            throw new EntityAlreadyExistsException("Файл с таким именем уже существует");
+        }
+        createParents(userId, path);
+        try {
+            return resourceNodeRepository.saveAndFlush(ResourceNode.builder()
+                    .userId(userId)
+                    .path(path)
+                    .parentPath(parentOf(path))
+                    .name(nameOf(path))
+                    .type(type)
+                    .storageKey(storageKey)
+                    .size(size)
+                    .etag(etag)
+                    .contentType(contentType)
+                    .lastModified(lastModified)
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            throw new EntityAlreadyExistsException("Файл с таким именем уже существует");
+        }
+    }
+
+    /**
+     * Привязывает пустой объект-маркер старой папки к её записи, создавая запись при необходимости.
+     */
+    @Transactional
+    public void importDirectoryMarker(Long userId, String path, String storageKey) {
+        createParents(userId, path);
+        resourceNodeRepository.insertDirectoryIfAbsent(userId, path, parentOf(path), nameOf(path));
+        resourceNodeRepository.attachStorageKey(userId, path, storageKey);
+    }
+
+    /**
+     * Создаёт недостающие папки на пути к {@code path}. Параллельные вызовы не конфликтуют между собой.
+     */
+    public void createParents(Long userId, String path) {
+        int slash = path.indexOf('/');
+        while (slash >= 0 && slash < path.length() - 1) {
+            String directory = path.substring(0, slash + 1);
+            resourceNodeRepository.insertDirectoryIfAbsent(userId, directory, parentOf(directory), nameOf(directory));
+            slash = path.indexOf('/', slash + 1);
+        }
+    }
+
+    /**
+     * Перемещает ресурс вместе с содержимым одним UPDATE метаданных.
+     *
+     * @return ресурс до перемещения
+     */
+    @Transactional
+    public ResourceNode move(Long userId, String from, String to) {
+        ResourceNode node = get(userId, from);
+        if (exists(userId, to)) {
+            throw new EntityAlreadyExistsException("Файл с таким именем уже существует");
+        }
+        createParents(userId, to);
+        try {
+            resourceNodeRepository.move(userId, from, descendantsPattern(from), to, parentOf(to), nameOf(to),
+                    from.length() + 1);
+        } catch (DataIntegrityViolationException e) {
+            throw new EntityAlreadyExistsException("Файл с таким именем уже существует");
+        }
+        return node;
+    }
+
+    /**
+     * Обходит ресурс и всех его потомков в порядке путей, подгружая их страницами по {@value #PAGE_SIZE}.
+     */
+    public Iterator<ResourceNode> tree(Long userId, String path) {
+        String pattern = descendantsPattern(path);
+        return new Iterator<>() {
+            private Iterator<ResourceNode> page = Collections.emptyIterator();
+            private String after = "";
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && !last) {
+                    List<ResourceNode> nodes = resourceNodeRepository.findTree(userId, path, pattern, after,
+                            PageRequest.of(0, PAGE_SIZE));
+                    last = nodes.size() < PAGE_SIZE;
+                    if (!nodes.isEmpty()) {
+                        after = nodes.get(nodes.size() - 1).getPath();
+                    }
+                    page = nodes.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public ResourceNode next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * Ключи объектов Minio под ресурсом {@code path}, включая сам ресурс.
+     */
+    public Iterator<String> storageKeys(Long userId, String path) {
+        Iterator<ResourceNode> nodes = tree(userId, path);
+        return new Iterator<>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && nodes.hasNext()) {
+                    next = nodes.next().getStorageKey();
+                }
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String storageKey = next;
+                next = null;
+                return storageKey;
+            }
+        };
+    }
+
+    /**
+     * Обходит все записи с объектами в побайтовом порядке ключей, подгружая их страницами по {@value #PAGE_SIZE}.
+     */
+    public Iterator<ResourceNode> objectNodes() {
+        return new Iterator<>() {
+            private Iterator<ResourceNode> page = Collections.emptyIterator();
+            private String after = "";
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && !last) {
+                    List<ResourceNode> nodes = resourceNodeRepository.findObjectsAfter(after, PAGE_SIZE);
+                    last = nodes.size() < PAGE_SIZE;
+                    if (!nodes.isEmpty()) {
+                        after = nodes.get(nodes.size() - 1).getStorageKey();
+                    }
+                    page = nodes.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public ResourceNode next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * Убирает из пространства имён потерянный объект: папка остаётся без маркера, запись файла удаляется.
+     * Ничего не делает, если запись с тех пор изменилась.
+     */
+    public void forgetObject(ResourceNode node) {
+        if (node.getType() == Type.DIRECTORY) {
+            resourceNodeRepository.detachStorageKey(node.getId(), node.getStorageKey());
+        } else {
+            resourceNodeRepository.deleteObject(node.getId(), node.getStorageKey());
+        }
+    }
+
+    public long countObjects(Long userId, String path) {
+        return resourceNodeRepository.countObjects(userId, path, descendantsPattern(path));
+    }
+
+    public void deleteTree(Long userId, String path) {
+        resourceNodeRepository.deleteTree(userId, path, descendantsPattern(path));
+    }
+
+    static String parentOf(String path) {
+        String name = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        return name.substring(0, name.lastIndexOf('/') + 1);
+    }
+
+    static String nameOf(String path) {
+        String name = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * LIKE-шаблон потомков папки; для файла совпадает только с ним самим.
+     */
+    static String descendantsPattern(String path) {
+        String escaped = escapeLike(path);
+        return path.isEmpty() || path.endsWith("/") ? escaped + "%" : escaped;
+    }
+
+    static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+}
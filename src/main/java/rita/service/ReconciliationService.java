@@ -0,0 +1,286 @@
+package rita.service;
+
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.Result;
+import io.minio.StatObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Item;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import rita.exeptions.EntityAlreadyExistsException;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
+import rita.repository.ResourceNodeRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Сверяет пространство имён с содержимым бакета.
+ * <p>
+ * При запуске в пространство имён переносятся объекты, загруженные до его появления. Старые объекты лежат под
+ * ключами {@code user-<id>-files/<путь>}: ключ остаётся прежним и становится ключом объекта записи, а путь
+ * берётся из ключа. Объекты, у которых запись уже есть (в том числе перемещённые после импорта), пропускаются,
+ * поэтому импорт можно безопасно повторять при каждом запуске.
+ * <p>
+ * Периодическая сверка ({@code minio.reconcile-interval}) исправляет расхождения, накопившиеся из-за сбоев
+ * между записью в Minio и в базу: записи, объекты которых пропали, убираются, а объекты {@code user-<id>-objects/}
+ * без записи старше {@code minio.orphan-grace} удаляются из бакета.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class ReconciliationService {
+
+    private static final Pattern LEGACY_KEY = Pattern.compile("user-(\\d+)-files/(.+)");
+    private static final Pattern OBJECT_KEY = Pattern.compile("user-\\d+-objects/.+");
+    private static final int BATCH_SIZE = 1000;
+
+    private final MinioClient minioClient;
+    private final NamespaceService namespaceService;
+    private final ResourceNodeRepository resourceNodeRepository;
+    private final BulkDeleteService bulkDeleteService;
+    private final SearchIndexService searchIndexService;
+    private final ListingCacheService listingCacheService;
+    private final MetadataCacheService metadataCacheService;
+    private final MinioProperties minioProperties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void importLegacyObjectsOnStartup() {
+        if (!minioProperties.isLegacyImport()) {
+            return;
+        }
+        try {
+            long imported = importLegacyObjects();
+            if (imported > 0) {
+                log.info("В пространство имён импортировано {} объектов", imported);
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось импортировать старые объекты в пространство имён", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${minio.reconcile-interval:PT6H}",
+            initialDelayString = "${minio.reconcile-interval:PT6H}")
+    public void reconcileOnSchedule() {
+        try {
+            Report report = reconcile();
+            if (report.imported() + report.orphansRemoved() + report.missingRemoved() > 0) {
+                log.info("Сверка пространства имён: импортировано {}, удалено объектов без записи {}, "
+                                + "удалено записей без объекта {}",
+                        report.imported(), report.orphansRemoved(), report.missingRemoved());
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось сверить пространство имён с Minio", e);
+        }
+    }
+
+    long importLegacyObjects() throws Exception {
+        long imported = 0;
+        List<Item> batch = new ArrayList<>(BATCH_SIZE);
+        for (Result<Item> result : listObjects()) {
+            Item item = result.get();
+            if (LEGACY_KEY.matcher(item.objectName()).matches()) {
+                batch.add(item);
+            }
+            if (batch.size() == BATCH_SIZE) {
+                imported += importBatch(batch);
+                batch.clear();
+            }
+        }
+        return imported + importBatch(batch);
+    }
+
+    /**
+     * Проходит листинг бакета и записи с объектами одновременно: оба упорядочены побайтово по ключу,
+     * поэтому расхождения находятся за один проход без загрузки всех ключей в память.
+     */
+    Report reconcile() throws Exception {
+        Instant orphanDeadline = Instant.now().minus(minioProperties.getOrphanGrace());
+        Iterator<Result<Item>> objects = listObjects().iterator();
+        Iterator<ResourceNode> nodes = namespaceService.objectNodes();
+
+        List<Item> legacy = new ArrayList<>(BATCH_SIZE);
+        List<String> orphans = new ArrayList<>(BATCH_SIZE);
+        long imported = 0;
+        long orphansRemoved = 0;
+        long missingRemoved = 0;
+
+        Item object = nextObject(objects);
+        ResourceNode node = nodes.hasNext() ? nodes.next() : null;
+        while (object != null || node != null) {
+            int order = object == null ? 1
+                    : node == null ? -1
+                    : compareKeys(object.objectName(), node.getStorageKey());
+            if (order == 0) {
+                object = nextObject(objects);
+                node = nodes.hasNext() ? nodes.next() : null;
+                continue;
+            }
+            if (order > 0) {
+                if (isMissing(node.getStorageKey())) {
+                    namespaceService.forgetObject(node);
+                    searchIndexService.invalidate(node.getUserId());
+                    listingCacheService.invalidate(node.getUserId());
+                    metadataCacheService.invalidate(node.getUserId());
+                    missingRemoved++;
+                }
+                node = nodes.hasNext() ? nodes.next() : null;
+                continue;
+            }
+
+            if (LEGACY_KEY.matcher(object.objectName()).matches()) {
+                if (minioProperties.isLegacyImport()) {
+                    legacy.add(object);
+                }
+            } else if (object.lastModified() != null
+                    && object.lastModified().toInstant().isBefore(orphanDeadline)) {
+                orphans.add(object.objectName());
+            }
+            if (legacy.size() == BATCH_SIZE) {
+                imported += importBatch(legacy);
+                legacy.clear();
+            }
+            if (orphans.size() == BATCH_SIZE) {
+                orphansRemoved += removeOrphans(orphans);
+                orphans.clear();
+            }
+            object = nextObject(objects);
+        }
+        return new Report(imported + importBatch(legacy), orphansRemoved + removeOrphans(orphans), missingRemoved);
+    }
+
+    private Iterable<Result<Item>> listObjects() {
+        return minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket("user-files")
+                        .prefix("user-")
+                        .recursive(true)
+                        .includeUserMetadata(true)
+                        .build()
+        );
+    }
+
+    private Item nextObject(Iterator<Result<Item>> objects) throws Exception {
+        while (objects.hasNext()) {
+            Item item = objects.next().get();
+            String key = item.objectName();
+            if (LEGACY_KEY.matcher(key).matches() || OBJECT_KEY.matcher(key).matches()) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Перепроверяет отсутствие объекта: он мог появиться уже после того, как листинг прошёл его ключ.
+     */
+    private boolean isMissing(String storageKey) throws Exception {
+        try {
+            minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket("user-files")
+                            .object(storageKey)
+                            .build()
+            );
+            return false;
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return true;
+            }
+            throw e;
+        }
+    }
+
+    private long removeOrphans(List<String> orphans) {
+        if (orphans.isEmpty()) {
+            return 0;
+        }
+        // объект мог получить запись, пока шёл листинг: такие ключи не трогаем
+        Set<String> known = resourceNodeRepository.findByStorageKeyIn(orphans).stream()
+                .map(ResourceNode::getStorageKey)
+                .collect(Collectors.toSet());
+        List<String> removable = orphans.stream().filter(key -> !known.contains(key)).toList();
+        BulkDeleteService.Report report = bulkDeleteService.removeAll(removable.iterator());
+        if (report.failed() > 0) {
+            log.warn("Не удалось удалить {} объектов без записи: {}", report.failed(),
+                    String.join("; ", report.errors().subList(0, Math.min(10, report.errors().size()))));
+        }
+        return report.deleted();
+    }
+
+    private long importBatch(List<Item> items) {
+        if (items.isEmpty()) {
+            return 0;
+        }
+        Set<String> known = resourceNodeRepository
+                .findByStorageKeyIn(items.stream().map(Item::objectName).toList()).stream()
+                .map(ResourceNode::getStorageKey)
+                .collect(Collectors.toSet());
+
+        long imported = 0;
+        for (Item item : items) {
+            String key = item.objectName();
+            if (known.contains(key)) {
+                continue;
+            }
+            Matcher matcher = LEGACY_KEY.matcher(key);
+            matcher.matches();
+            Long userId = Long.valueOf(matcher.group(1));
+            String path = matcher.group(2);
+            try {
+                if (path.endsWith("/")) {
+                    namespaceService.importDirectoryMarker(userId, path, key);
+                } else {
+                    namespaceService.createFile(userId, path, key, item.size(),
+                            item.etag() == null ? null : item.etag().replace("\"", ""),
+                            contentType(item),
+                            item.lastModified() == null ? Instant.now() : item.lastModified().toInstant());
+                }
+                searchIndexService.invalidate(userId);
+                listingCacheService.invalidate(userId);
+                metadataCacheService.invalidate(userId);
+                imported++;
+            } catch (EntityAlreadyExistsException e) {
+                log.warn("Путь {} пользователя {} уже занят, объект {} не импортирован", path, userId, key);
+            }
+        }
+        return imported;
+    }
+
+    private String contentType(Item item) {
+        Map<String, String> metadata = item.userMetadata();
+        if (metadata == null) {
+            return null;
+        }
+        return metadata.entrySet().stream()
+                .filter(entry -> "content-type".equalsIgnoreCase(entry.getKey()))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Порядок ключей в листинге S3: побайтовое сравнение UTF-8.
+     */
+    static int compareKeys(String left, String right) {
+        return Arrays.compareUnsigned(left.getBytes(StandardCharsets.UTF_8), right.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public record Report(long imported, long orphansRemoved, long missingRemoved) {
+    }
+}
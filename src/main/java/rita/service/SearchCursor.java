@@ -0,0 +1,72 @@
+package rita.service;
+
+import javax.validation.ValidationException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * Позиция в результатах поиска по имени.
+ * <p>
+ * Результаты упорядочены по рангу совпадения ({@link #EXACT}, {@link #PREFIX}, {@link #CONTAINS}), а внутри
+ * ранга — по байтам пути в UTF-8, как {@code collate "C"} в Postgres, поэтому курсор остаётся верным при
+ * переключении между индексом в памяти и базой. Курсор указывает на последний отданный результат; клиенту он
+ * передаётся непрозрачной строкой.
+ */
+public record SearchCursor(int rank, String path) implements Comparable<SearchCursor> {
+
+    public static final int EXACT = 0;
+    public static final int PREFIX = 1;
+    public static final int CONTAINS = 2;
+
+    /**
+     * Позиция перед первым результатом.
+     */
+    public static final SearchCursor FIRST = new SearchCursor(EXACT, "");
+
+    private static final Comparator<SearchCursor> ORDER = Comparator.comparingInt(SearchCursor::rank)
+            .thenComparing(SearchCursor::path, SearchCursor::comparePaths);
+
+    /**
+     * @param name   имя ресурса в нижнем регистре
+     * @param needle строка поиска в нижнем регистре, входящая в имя
+     */
+    public static int rankOf(String name, String needle) {
+        if (name.equals(needle)) {
+            return EXACT;
+        }
+        return name.startsWith(needle) ? PREFIX : CONTAINS;
+    }
+
+    public static SearchCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return FIRST;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf(':');
+            int rank = Integer.parseInt(value.substring(0, separator));
+            if (rank < EXACT || rank > CONTAINS) {
+                throw new ValidationException("Недопустимый курсор поиска");
+            }
+            return new SearchCursor(rank, value.substring(separator + 1));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ValidationException("Недопустимый курсор поиска");
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((rank + ":" + path).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int compareTo(SearchCursor other) {
+        return ORDER.compare(this, other);
+    }
+
+    private static int comparePaths(String left, String right) {
+        return Arrays.compareUnsigned(left.getBytes(StandardCharsets.UTF_8), right.getBytes(StandardCharsets.UTF_8));
+    }
+}
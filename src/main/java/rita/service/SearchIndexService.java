@@ -0,0 +1,224 @@
+package rita.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Необязательный поиск и автодополнение по именам в памяти процесса ({@code minio.search-index}).
+ * <p>
+ * Индекс пользователя строится из пространства имён при первом поиске и дальше обновляется методами
+ * {@link MinioService}, меняющими ресурсы. Изменения, сделанные на других узлах, сюда не приходят,
+ * поэтому индекс живёт не дольше {@code minio.search-index-ttl} и затем строится заново.
+ * Индексы всех пользователей вместе укладываются в {@code minio.search-index-budget}: сверх него вытесняются
+ * давно не использованные. Пользователь, чей индекс один не помещается в бюджет, на тот же срок ищет через базу.
+ * Попадания и промахи пишутся в счётчик {@code search.index.requests}, занятая память — в {@code search.index.bytes}.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class SearchIndexService {
+
+    private final NamespaceService namespaceService;
+    private final MinioProperties minioProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Long, Loaded> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    // пользователи, чей индекс не поместился в бюджет, и момент, до которого его не пытаемся строить снова
+    private final Map<Long, Long> oversized = new HashMap<>();
+    // изменения, пришедшие во время построения индекса, делают его устаревшим ещё до публикации
+    private final Set<Long> building = new HashSet<>();
+    private final Set<Long> stale = new HashSet<>();
+
+    @PostConstruct
+    void registerMetrics() {
+        meterRegistry.gauge("search.index.bytes", this, SearchIndexService::bytes);
+        meterRegistry.gauge("search.index.users", this, SearchIndexService::users);
+    }
+
+    /**
+     * Ищет по индексу пользователя, при необходимости построив его.
+     *
+     * @return пусто, если индекс выключен, уже строится другим запросом, устарел во время построения
+     *         или не помещается в бюджет
+     */
+    public Optional<List<ResourceNode>> search(Long userId, String query, SearchCursor after, int limit) {
+        return query(userId, index -> index.search(query, after, limit));
+    }
+
+    /**
+     * Автодополнение имени по префиксу из того же индекса.
+     *
+     * @return пусто в тех же случаях, что и {@link #search}
+     */
+    public Optional<List<String>> complete(Long userId, String prefix, int limit) {
+        return query(userId, index -> index.complete(prefix, limit));
+    }
+
+    public void added(Long userId, ResourceNode node) {
+        update(userId, index -> index.add(node.getPath(), node.getType(), node.getSize()));
+    }
+
+    public void removed(Long userId, String path) {
+        update(userId, index -> index.remove(path));
+    }
+
+    public void moved(Long userId, String from, String to) {
+        update(userId, index -> index.move(from, to));
+    }
+
+    /**
+     * Сбрасывает индекс пользователя, если пространство имён изменилось в обход {@link MinioService}.
+     */
+    public void invalidate(Long userId) {
+        synchronized (indexes) {
+            if (building.contains(userId)) {
+                stale.add(userId);
+            }
+            indexes.remove(userId);
+            oversized.remove(userId);
+        }
+    }
+
+    long bytes() {
+        synchronized (indexes) {
+            return indexes.values().stream().mapToLong(loaded -> loaded.index().bytes()).sum();
+        }
+    }
+
+    int users() {
+        synchronized (indexes) {
+            return indexes.size();
+        }
+    }
+
+    private <T> Optional<T> query(Long userId, Function<NameIndex, T> lookup) {
+        if (!minioProperties.isSearchIndex()) {
+            return Optional.empty();
+        }
+        long now = System.nanoTime();
+        NameIndex index = null;
+        synchronized (indexes) {
+            Loaded loaded = indexes.get(userId);
+            if (loaded != null && loaded.expiresAt() - now > 0) {
+                index = loaded.index();
+            } else if (loaded != null) {
+                indexes.remove(userId);
+            }
+            Long skipUntil = oversized.get(userId);
+            if (index == null && skipUntil != null) {
+                if (skipUntil - now > 0) {
+                    meterRegistry.counter("search.index.requests", "result", "oversized").increment();
+                    return Optional.empty();
+                }
+                oversized.remove(userId);
+            }
+        }
+        if (index != null) {
+            meterRegistry.counter("search.index.requests", "result", "hit").increment();
+        } else {
+            meterRegistry.counter("search.index.requests", "result", "miss").increment();
+            index = build(userId);
+            if (index == null) {
+                return Optional.empty();
+            }
+        }
+        synchronized (index) {
+            return Optional.of(lookup.apply(index));
+        }
+    }
+
+    private NameIndex build(Long userId) {
+        synchronized (indexes) {
+            if (!building.add(userId)) {
+                return null;
+            }
+            stale.remove(userId);
+        }
+        NameIndex index = new NameIndex();
+        try {
+            Iterator<ResourceNode> nodes = namespaceService.tree(userId, "");
+            while (nodes.hasNext()) {
+                ResourceNode node = nodes.next();
+                index.add(node.getPath(), node.getType(), node.getSize());
+            }
+        } catch (RuntimeException e) {
+            synchronized (indexes) {
+                building.remove(userId);
+            }
+            throw e;
+        }
+        synchronized (indexes) {
+            building.remove(userId);
+            if (stale.remove(userId)) {
+                log.debug("Индекс поиска пользователя {} устарел во время построения", userId);
+                return null;
+            }
+            long expiresAt = System.nanoTime() + minioProperties.getSearchIndexTtl().toNanos();
+            if (index.bytes() > minioProperties.getSearchIndexBudget().toBytes()) {
+                log.debug("Индекс поиска пользователя {} не помещается в бюджет: {} байт", userId, index.bytes());
+                oversized.put(userId, expiresAt);
+                return null;
+            }
+            indexes.put(userId, new Loaded(index, expiresAt));
+            evictOverBudget();
+        }
+        return index;
+    }
+
+    private void update(Long userId, Consumer<NameIndex> change) {
+        if (!minioProperties.isSearchIndex()) {
+            return;
+        }
+        NameIndex index;
+        synchronized (indexes) {
+            if (building.contains(userId)) {
+                stale.add(userId);
+            }
+            Loaded loaded = indexes.get(userId);
+            if (loaded == null) {
+                return;
+            }
+            index = loaded.index();
+        }
+        synchronized (index) {
+            change.accept(index);
+        }
+        synchronized (indexes) {
+            evictOverBudget();
+        }
+    }
+
+    private void evictOverBudget() {
+        long budget = minioProperties.getSearchIndexBudget().toBytes();
+        long total = indexes.values().stream().mapToLong(loaded -> loaded.index().bytes()).sum();
+        Iterator<Map.Entry<Long, Loaded>> eldest = indexes.entrySet().iterator();
+        while (total > budget && eldest.hasNext()) {
+            Map.Entry<Long, Loaded> entry = eldest.next();
+            total -= entry.getValue().index().bytes();
+            eldest.remove();
+            meterRegistry.counter("search.index.evictions").increment();
+        }
+    }
+
+    /**
+     * @param expiresAt значение {@link System#nanoTime()}, после которого индекс строится заново
+     */
+    private record Loaded(NameIndex index, long expiresAt) {
+    }
+}
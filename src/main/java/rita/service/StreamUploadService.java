@@ -0,0 +1,139 @@
+package rita.service;
+
+import io.minio.messages.Part;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import rita.dto.ResourceResponseDto;
+import rita.exeptions.MinioException;
+import rita.minio.MinioProperties;
+import rita.minio.MultipartMinioClient;
+import rita.security.AuthenticationHelperImpl;
+
+import javax.validation.ValidationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Загружает тело запроса в Minio потоком, без промежуточного временного файла.
+ * <p>
+ * Поток режется на части по {@code minio.upload-chunk-size} и отправляется через S3 multipart upload,
+ * одновременно в полёте не больше {@code minio.upload-parallelism} частей. Размер потока
+ * может быть заранее неизвестен; памяти при этом занято не больше {@code parallelism × chunk-size}.
+ * Поток длиннее {@code minio.max-upload-size} отклоняется, как только превышает лимит,
+ * а уже загруженные части удаляются вместе с multipart upload.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class StreamUploadService {
+
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PARTS = 10_000;
+
+    private final ObjectProvider<MultipartMinioClient> multipartMinioClient;
+    private final MinioService minioService;
+    private final AuthenticationHelperImpl authenticationHelper;
+    private final MinioProperties minioProperties;
+    private final ExecutorService minioTaskExecutor;
+
+    /**
+     * @param contentLength размер тела запроса или {@code -1}, если он неизвестен
+     */
+    public ResourceResponseDto upload(String clientPath, String fileName, String contentType,
+                                      long contentLength, InputStream inputStream) {
+
+        long maxSize = minioProperties.getMaxUploadSize().toBytes();
+        if (contentLength > maxSize) {
+            throw new ValidationException("Файл больше допустимого размера");
+        }
+        Long userId = authenticationHelper.getCurrentUserId();
+        MinioService.NewObject target = minioService.resolveNewObject(clientPath, fileName, userId);
+        String object = target.storageKey();
+
+        long partSize = Math.max(minioProperties.getUploadChunkSize().toBytes(), MIN_PART_SIZE);
+        if (contentLength > 0) {
+            partSize = Math.max(partSize, (contentLength + MAX_PARTS - 1) / MAX_PARTS);
+        }
+
+        MultipartMinioClient client = multipartMinioClient.getObject();
+        String uploadId;
+        try {
+            uploadId = client.createMultipartUpload("user-files", object, contentType);
+        } catch (Exception e) {
+            throw new MinioException("Не удалось начать загрузку: " + e.getMessage());
+        }
+
+        Semaphore inFlight = new Semaphore(Math.max(1, minioProperties.getUploadParallelism()));
+        List<CompletableFuture<Part>> parts = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            long total = 0;
+            while (true) {
+                inFlight.acquire();
+                byte[] data = inputStream.readNBytes((int) partSize);
+                if (data.length == 0 && partNumber > 1) {
+                    inFlight.release();
+                    break;
+                }
+                total += data.length;
+                if (total > maxSize) {
+                    inFlight.release();
+                    throw new ValidationException("Файл больше допустимого размера");
+                }
+                if (partNumber > MAX_PARTS) {
+                    throw new ValidationException("Файл слишком большой");
+                }
+
+                int number = partNumber++;
+                parts.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return new Part(number, client.uploadPart("user-files", object, uploadId, number, data));
+                    } catch (Exception e) {
+                        throw new MinioException("Не удалось загрузить часть " + number + ": " + e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                }, minioTaskExecutor));
+
+                if (data.length < partSize || parts.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
+                }
+            }
+
+            Part[] completed = parts.stream().map(CompletableFuture::join).toArray(Part[]::new);
+            client.completeMultipartUpload("user-files", object, uploadId, completed);
+        } catch (Exception e) {
+            parts.forEach(part -> part.cancel(true));
+            abort(client, object, uploadId);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (e instanceof ValidationException validationException) {
+                throw validationException;
+            }
+            if (e instanceof IOException) {
+                throw new ValidationException("Не удалось прочитать тело запроса: " + e.getMessage());
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            throw new MinioException("Неизвестная ошибка Minio: " + cause.getMessage());
+        }
+
+        return minioService.registerUploaded(userId, target.path(), object);
+    }
+
+    private void abort(MultipartMinioClient client, String object, String uploadId) {
+        try {
+            client.abortMultipartUpload("user-files", object, uploadId);
+        } catch (Exception e) {
+            log.warn("Не удалось отменить multipart upload {}", uploadId, e);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package rita.service;
+
+import io.minio.errors.InsufficientDataException;
+import io.minio.messages.Part;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import rita.dto.ResourceResponseDto;
+import rita.dto.UploadSessionDto;
+import rita.exeptions.MinioException;
+import rita.minio.MinioProperties;
+import rita.minio.MultipartMinioClient;
+import rita.security.AuthenticationHelperImpl;
+
+import javax.persistence.EntityNotFoundException;
+import javax.validation.ValidationException;
+import java.io.InputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Возобновляемая загрузка файла частями поверх S3 multipart upload.
+ * <p>
+ * Состояние сессии хранится в Redis: хэш {@code upload-session:<id>} с параметрами загрузки
+ * и хэш {@code upload-session:<id>:parts} с etag полученных частей. Время последней активности
+ * хранится в sorted set {@code upload-sessions}; сессии, к которым не обращались дольше
+ * {@code minio.upload-session-ttl}, периодически удаляются вместе с незавершённым multipart upload.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class UploadSessionService {
+
+    private static final String SESSION_KEY = "upload-session:%s";
+    private static final String PARTS_KEY = "upload-session:%s:parts";
+    private static final String SESSIONS_KEY = "upload-sessions";
+
+    private static final long MIN_CHUNK_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_CHUNKS = 10_000;
+
+    private final ObjectProvider<MultipartMinioClient> multipartMinioClient;
+    private final MinioService minioService;
+    private final AuthenticationHelperImpl authenticationHelper;
+    private final StringRedisTemplate redisTemplate;
+    private final MinioProperties minioProperties;
+
+    public UploadSessionDto createSession(String clientPath, String fileName, long size, String contentType) {
+
+        if (size < 0) {
+            throw new ValidationException("Размер файла не может быть отрицательным");
+        }
+        if (size > minioProperties.getMaxUploadSize().toBytes()) {
+            throw new ValidationException("Файл больше допустимого размера");
+        }
+        Long userId = authenticationHelper.getCurrentUserId();
+        MinioService.NewObject target = minioService.resolveNewObject(clientPath, fileName, userId);
+        String object = target.storageKey();
+
+        long chunkSize = Math.max(minioProperties.getUploadChunkSize().toBytes(), MIN_CHUNK_SIZE);
+        chunkSize = Math.max(chunkSize, (size + MAX_CHUNKS - 1) / MAX_CHUNKS);
+
+        String uploadId;
+        try {
+            uploadId = multipartMinioClient.getObject().createMultipartUpload("user-files", object, contentType);
+        } catch (Exception e) {
+            throw new MinioException("Не удалось начать загрузку: " + e.getMessage());
+        }
+
+        String id = UUID.randomUUID().toString();
+        Map<String, String> session = Map.of(
+                "userId", userId.toString(),
+                "path", clientPath,
+                "name", fileName,
+                "target", target.path(),
+                "object", object,
+                "uploadId", uploadId,
+                "size", Long.toString(size),
+                "chunkSize", Long.toString(chunkSize)
+        );
+        hash().putAll(SESSION_KEY.formatted(id), session);
+        touch(id);
+        return toDto(id, session, List.of());
+    }
+
+    public UploadSessionDto getSession(String id) {
+        Map<String, String> session = findSession(id);
+        touch(id);
+        return toDto(id, session, receivedChunks(id));
+    }
+
+    public void uploadChunk(String id, int chunk, long length, InputStream inputStream) {
+
+        Map<String, String> session = findSession(id);
+        long size = Long.parseLong(session.get("size"));
+        long chunkSize = Long.parseLong(session.get("chunkSize"));
+        int chunks = chunkCount(size, chunkSize);
+
+        if (chunk < 1 || chunk > chunks) {
+            throw new ValidationException("Номер части должен быть от 1 до " + chunks);
+        }
+        long expected = chunk < chunks ? chunkSize : size - chunkSize * (chunks - 1);
+        if (length >= 0 && length != expected) {
+            throw new ValidationException("Неверный размер части: ожидалось " + expected + " байт");
+        }
+
+        String etag;
+        try {
+            etag = multipartMinioClient.getObject().uploadPart("user-files", session.get("object"),
+                    session.get("uploadId"), chunk, inputStream, expected);
+        } catch (InsufficientDataException e) {
+            throw new ValidationException("Неверный размер части: ожидалось " + expected + " байт");
+        } catch (Exception e) {
+            throw new MinioException("Не удалось загрузить часть " + chunk + ": " + e.getMessage());
+        }
+        hash().put(PARTS_KEY.formatted(id), Integer.toString(chunk), etag);
+        touch(id);
+    }
+
+    public ResourceResponseDto complete(String id) {
+
+        Map<String, String> session = findSession(id);
+        long size = Long.parseLong(session.get("size"));
+        int chunks = chunkCount(size, Long.parseLong(session.get("chunkSize")));
+
+        Map<String, String> parts = hash().entries(PARTS_KEY.formatted(id));
+        if (parts.size() < chunks) {
+            throw new ValidationException("Загружено " + parts.size() + " из " + chunks + " частей");
+        }
+        Long userId = Long.parseLong(session.get("userId"));
+        minioService.resolveNewObject(session.get("path"), session.get("name"), userId);
+
+        Part[] completed = parts.entrySet().stream()
+                .map(part -> new Part(Integer.parseInt(part.getKey()), part.getValue()))
+                .sorted(Comparator.comparingInt(Part::partNumber))
+                .toArray(Part[]::new);
+        try {
+            multipartMinioClient.getObject().completeMultipartUpload("user-files", session.get("object"),
+                    session.get("uploadId"), completed);
+        } catch (Exception e) {
+            throw new MinioException("Не удалось завершить загрузку: " + e.getMessage());
+        }
+        forget(id);
+
+        // сессии, созданные до появления пространства имён, хранят только папку и имя файла
+        String target = session.getOrDefault("target", session.get("path") + session.get("name"));
+        return minioService.registerUploaded(userId, target, session.get("object"));
+    }
+
+    public void abort(String id) {
+        abort(id, findSession(id));
+    }
+
+    @Scheduled(fixedDelayString = "${minio.upload-cleanup-interval:PT10M}")
+    public void removeAbandonedSessions() {
+        try {
+            long deadline = System.currentTimeMillis() - minioProperties.getUploadSessionTtl().toMillis();
+            Set<String> abandoned = redisTemplate.opsForZSet().rangeByScore(SESSIONS_KEY, 0, deadline);
+            if (abandoned == null) {
+                return;
+            }
+            for (String id : abandoned) {
+                Map<String, String> session = hash().entries(SESSION_KEY.formatted(id));
+                if (session.isEmpty()) {
+                    forget(id);
+                    continue;
+                }
+                log.info("Удаляем заброшенную сессию загрузки {} ({})", id, session.get("object"));
+                abort(id, session);
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось очистить заброшенные сессии загрузки", e);
+        }
+    }
+
+    private void abort(String id, Map<String, String> session) {
+        try {
+            multipartMinioClient.getObject()
+                    .abortMultipartUpload("user-files", session.get("object"), session.get("uploadId"));
+        } catch (Exception e) {
+            log.warn("Не удалось отменить multipart upload {}", session.get("uploadId"), e);
+        }
+        forget(id);
+    }
+
+    private Map<String, String> findSession(String id) {
+        Map<String, String> session = hash().entries(SESSION_KEY.formatted(id));
+        if (session.isEmpty()
+                || !session.get("userId").equals(authenticationHelper.getCurrentUserId().toString())) {
+            throw new EntityNotFoundException("Сессия загрузки не найдена");
+        }
+        return session;
+    }
+
+    private List<Integer> receivedChunks(String id) {
+        return hash().keys(PARTS_KEY.formatted(id)).stream()
+                .map(Integer::parseInt)
+                .sorted()
+                .toList();
+    }
+
+    private void touch(String id) {
+        redisTemplate.opsForZSet().add(SESSIONS_KEY, id, System.currentTimeMillis());
+    }
+
+    private void forget(String id) {
+        redisTemplate.delete(List.of(SESSION_KEY.formatted(id), PARTS_KEY.formatted(id)));
+        redisTemplate.opsForZSet().remove(SESSIONS_KEY, id);
+    }
+
+    private HashOperations<String, String, String> hash() {
+        return redisTemplate.opsForHash();
+    }
+
+    private static int chunkCount(long size, long chunkSize) {
+        return (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+    }
+
+    private static UploadSessionDto toDto(String id, Map<String, String> session, List<Integer> received) {
+        long size = Long.parseLong(session.get("size"));
+        long chunkSize = Long.parseLong(session.get("chunkSize"));
+        return new UploadSessionDto(id, session.get("path"), session.get("name"), size, chunkSize,
+                chunkCount(size, chunkSize), received);
+    }
+}
@@ -0,0 +1,356 @@
+package rita.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Потоковый zip-писатель, который сжимает данные на {@link ForkJoinPool}.
+ * <p>
+ * Большие записи режутся на блоки по {@value #BLOCK_SIZE} байт, как в pigz: каждый блок
+ * сжимается отдельно со словарём из последних 32 КБ предыдущего блока и завершается
+ * SYNC_FLUSH, поэтому сжатые блоки можно просто склеить в один deflate-поток.
+ * CRC и размеры таких записей пишутся в data descriptor после данных.
+ * Несжатые (STORED) записи так писать нельзя: потоковый распаковщик не найдёт их конец,
+ * поэтому поток сначала сбрасывается во временный файл, а CRC и размер попадают в локальный заголовок.
+ * Записи, уже целиком лежащие в памяти, сжимаются заранее через {@link #compress(byte[], int)}.
+ * При необходимости используется ZIP64.
+ */
+public class ZipStreamWriter {
+
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRIES_LIMIT = 0xFFFF;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private final OutputStream out;
+    private final ForkJoinPool pool;
+    private final long dosTime;
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private long written;
+
+    public ZipStreamWriter(OutputStream out, ForkJoinPool pool) {
+        this.out = out;
+        this.pool = pool;
+        this.dosTime = toDosTime(LocalDateTime.now());
+    }
+
+    public static CompressedEntry compress(byte[] data, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if (level == Deflater.NO_COMPRESSION) {
+            return new CompressedEntry(STORED, crc.getValue(), data.length, data);
+        }
+        return new CompressedEntry(DEFLATED, crc.getValue(), data.length,
+                deflateBlock(data, data.length, null, level, true));
+    }
+
+    public void writeDirectory(String name) throws IOException {
+        writeEntry(name, new CompressedEntry(STORED, 0, 0, new byte[0]));
+    }
+
+    public void writeEntry(String name, CompressedEntry entry) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = written;
+        boolean zip64 = entry.size() >= ZIP64_LIMIT || entry.data().length >= ZIP64_LIMIT;
+
+        writeLocalHeader(nameBytes, entry.method(), FLAG_UTF8, entry.crc(),
+                entry.data().length, entry.size(), zip64);
+        write(entry.data(), entry.data().length);
+
+        entries.add(new CentralEntry(nameBytes, entry.method(), FLAG_UTF8, entry.crc(),
+                entry.data().length, entry.size(), offset));
+    }
+
+    /**
+     * Записывает поток, размер которого известен лишь приблизительно ({@code sizeHint}).
+     * При уровне {@link Deflater#NO_COMPRESSION} данные записываются без сжатия.
+     */
+    public void writeEntry(String name, InputStream inputStream, long sizeHint, int level) throws IOException {
+        if (level == Deflater.NO_COMPRESSION) {
+            writeStoredEntry(name, inputStream);
+            return;
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = written;
+        int flags = FLAG_UTF8 | FLAG_DATA_DESCRIPTOR;
+        boolean zip64 = sizeHint >= ZIP64_LIMIT - (ZIP64_LIMIT >> 4);
+
+        writeLocalHeader(nameBytes, DEFLATED, flags, 0, 0, 0, zip64);
+
+        CRC32 crc = new CRC32();
+        long size = 0;
+        long compressedSize = 0;
+        int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+        Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        byte[] dictionary = null;
+        byte[] block = inputStream.readNBytes(BLOCK_SIZE);
+        try {
+            while (true) {
+                byte[] next = block.length < BLOCK_SIZE ? new byte[0] : inputStream.readNBytes(BLOCK_SIZE);
+                boolean last = next.length == 0;
+                crc.update(block);
+                size += block.length;
+
+                byte[] input = block;
+                byte[] blockDictionary = dictionary;
+                inFlight.add(pool.submit(() -> deflateBlock(input, input.length, blockDictionary, level, last)));
+                if (block.length >= DICTIONARY_SIZE) {
+                    dictionary = Arrays.copyOfRange(block, block.length - DICTIONARY_SIZE, block.length);
+                }
+
+                while (inFlight.size() >= maxInFlight || (last && !inFlight.isEmpty())) {
+                    byte[] compressed = inFlight.poll().get();
+                    write(compressed, compressed.length);
+                    compressedSize += compressed.length;
+                }
+                if (last) {
+                    break;
+                }
+                block = next;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Сжатие прервано", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Не удалось сжать блок", e.getCause());
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+
+        writeInt(0x08074b50L);
+        writeInt(crc.getValue());
+        if (zip64) {
+            writeLong(compressedSize);
+            writeLong(size);
+        } else {
+            writeInt(compressedSize);
+            writeInt(size);
+        }
+
+        entries.add(new CentralEntry(nameBytes, DEFLATED, flags, crc.getValue(), compressedSize, size, offset));
+    }
+
+    private void writeStoredEntry(String name, InputStream inputStream) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = written;
+        Path spill = Files.createTempFile("zip-entry", ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            long size = 0;
+            byte[] buffer = new byte[BLOCK_SIZE];
+            try (OutputStream spillOut = Files.newOutputStream(spill)) {
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    spillOut.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+
+            writeLocalHeader(nameBytes, STORED, FLAG_UTF8, crc.getValue(), size, size, size >= ZIP64_LIMIT);
+            try (InputStream spillIn = Files.newInputStream(spill)) {
+                int read;
+                while ((read = spillIn.read(buffer)) != -1) {
+                    write(buffer, read);
+                }
+            }
+            entries.add(new CentralEntry(nameBytes, STORED, FLAG_UTF8, crc.getValue(), size, size, offset));
+        } finally {
+            Files.deleteIfExists(spill);
+        }
+    }
+
+    public void finish() throws IOException {
+        long centralOffset = written;
+        for (CentralEntry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralSize = written - centralOffset;
+
+        boolean zip64 = entries.size() >= ZIP64_ENTRIES_LIMIT
+                || centralOffset >= ZIP64_LIMIT
+                || centralSize >= ZIP64_LIMIT;
+        if (zip64) {
+            long zip64EndOffset = written;
+            writeInt(0x06064b50L);
+            writeLong(44);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(entries.size());
+            writeLong(entries.size());
+            writeLong(centralSize);
+            writeLong(centralOffset);
+
+            writeInt(0x07064b50L);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+
+        writeInt(0x06054b50L);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(entries.size(), ZIP64_ENTRIES_LIMIT));
+        writeShort(Math.min(entries.size(), ZIP64_ENTRIES_LIMIT));
+        writeInt(Math.min(centralSize, ZIP64_LIMIT));
+        writeInt(Math.min(centralOffset, ZIP64_LIMIT));
+        writeShort(0);
+        out.flush();
+    }
+
+    static byte[] deflateBlock(byte[] input, int length, byte[] dictionary, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input, 0, length);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeLocalHeader(byte[] name, int method, int flags, long crc,
+                                  long compressedSize, long size, boolean zip64) throws IOException {
+        writeInt(0x04034b50L);
+        writeShort(zip64 ? 45 : 20);
+        writeShort(flags);
+        writeShort(method);
+        writeInt(dosTime);
+        writeInt(crc);
+        if (zip64) {
+            writeInt(ZIP64_LIMIT);
+            writeInt(ZIP64_LIMIT);
+        } else {
+            writeInt(compressedSize);
+            writeInt(size);
+        }
+        writeShort(name.length);
+        writeShort(zip64 ? 20 : 0);
+        write(name, name.length);
+        if (zip64) {
+            writeShort(0x0001);
+            writeShort(16);
+            writeLong(size);
+            writeLong(compressedSize);
+        }
+    }
+
+    private void writeCentralHeader(CentralEntry entry) throws IOException {
+        boolean sizeZip64 = entry.size() >= ZIP64_LIMIT;
+        boolean compressedZip64 = entry.compressedSize() >= ZIP64_LIMIT;
+        boolean offsetZip64 = entry.offset() >= ZIP64_LIMIT;
+        int extraLength = (sizeZip64 ? 8 : 0) + (compressedZip64 ? 8 : 0) + (offsetZip64 ? 8 : 0);
+        boolean zip64 = extraLength > 0;
+        boolean directory = entry.name().length > 0 && entry.name()[entry.name().length - 1] == '/';
+
+        writeInt(0x02014b50L);
+        writeShort(45);
+        writeShort(zip64 ? 45 : 20);
+        writeShort(entry.flags());
+        writeShort(entry.method());
+        writeInt(dosTime);
+        writeInt(entry.crc());
+        writeInt(Math.min(entry.compressedSize(), ZIP64_LIMIT));
+        writeInt(Math.min(entry.size(), ZIP64_LIMIT));
+        writeShort(entry.name().length);
+        writeShort(zip64 ? extraLength + 4 : 0);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(directory ? 0x10 : 0);
+        writeInt(Math.min(entry.offset(), ZIP64_LIMIT));
+        write(entry.name(), entry.name().length);
+        if (zip64) {
+            writeShort(0x0001);
+            writeShort(extraLength);
+            if (sizeZip64) {
+                writeLong(entry.size());
+            }
+            if (compressedZip64) {
+                writeLong(entry.compressedSize());
+            }
+            if (offsetZip64) {
+                writeLong(entry.offset());
+            }
+        }
+    }
+
+    private static long toDosTime(LocalDateTime time) {
+        int year = Math.max(time.getYear() - 1980, 0);
+        return ((long) year << 25)
+                | ((long) time.getMonthValue() << 21)
+                | ((long) time.getDayOfMonth() << 16)
+                | ((long) time.getHour() << 11)
+                | ((long) time.getMinute() << 5)
+                | ((long) time.getSecond() >> 1);
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        written += length;
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+        written += 2;
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & 0xFFFFFFFFL);
+        writeInt(value >>> 32);
+    }
+
+    public record CompressedEntry(int method, long crc, long size, byte[] data) {
+    }
+
+    private record CentralEntry(byte[] name, int method, int flags, long crc,
+                                long compressedSize, long size, long offset) {
+    }
+}
@@ -0,0 +1,17 @@
+-- liquibase formatted sql
+-- changeset genrietta:create-delete-jobs-table1
+
+CREATE TABLE IF NOT EXISTS "delete_jobs" (
+                       id VARCHAR(36) PRIMARY KEY,
+                       user_id BIGINT NOT NULL REFERENCES "users"(id),
+                       path VARCHAR(1024) NOT NULL,
+                       status VARCHAR(16) NOT NULL,
+                       total BIGINT NOT NULL DEFAULT 0,
+                       removed BIGINT NOT NULL DEFAULT 0,
+                       failed BIGINT NOT NULL DEFAULT 0,
+                       error VARCHAR(2048),
+                       created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+                       updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS delete_jobs_status_idx ON "delete_jobs"(status);
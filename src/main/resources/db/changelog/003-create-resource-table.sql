@@ -0,0 +1,20 @@
+-- liquibase formatted sql
+-- changeset genrietta:create-resource-table1
+
+CREATE TABLE IF NOT EXISTS "resource" (
+                       id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                       user_id BIGINT NOT NULL REFERENCES "users"(id),
+                       path VARCHAR(1024) NOT NULL,
+                       parent_path VARCHAR(1024) NOT NULL,
+                       name VARCHAR(255) NOT NULL,
+                       type VARCHAR(16) NOT NULL,
+                       storage_key VARCHAR(1024),
+                       size BIGINT,
+                       etag VARCHAR(64),
+                       content_type VARCHAR(255),
+                       last_modified TIMESTAMP WITH TIME ZONE,
+                       CONSTRAINT resource_user_path_key UNIQUE (user_id, path)
+);
+
+CREATE INDEX IF NOT EXISTS resource_parent_idx ON "resource"(user_id, parent_path);
+CREATE UNIQUE INDEX IF NOT EXISTS resource_storage_key_idx ON "resource"(storage_key);
@@ -0,0 +1,6 @@
+-- liquibase formatted sql
+-- changeset genrietta:resource-listing-indexes1
+
+DROP INDEX IF EXISTS resource_parent_idx;
+CREATE INDEX IF NOT EXISTS resource_parent_name_idx ON "resource"(user_id, parent_path, name);
+CREATE INDEX IF NOT EXISTS resource_storage_key_c_idx ON "resource"(storage_key COLLATE "C");
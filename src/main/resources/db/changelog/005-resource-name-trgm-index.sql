@@ -0,0 +1,5 @@
+-- liquibase formatted sql
+-- changeset genrietta:resource-name-trgm-index1
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS resource_name_trgm_idx ON "resource" USING gin (lower(name) gin_trgm_ops);
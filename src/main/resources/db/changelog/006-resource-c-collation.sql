@@ -0,0 +1,8 @@
+-- liquibase formatted sql
+-- changeset genrietta:resource-c-collation1
+
+ALTER TABLE "resource" ALTER COLUMN path TYPE VARCHAR(1024) COLLATE "C";
+ALTER TABLE "resource" ALTER COLUMN parent_path TYPE VARCHAR(1024) COLLATE "C";
+ALTER TABLE "resource" ALTER COLUMN name TYPE VARCHAR(255) COLLATE "C";
+ALTER TABLE "resource" ALTER COLUMN storage_key TYPE VARCHAR(1024) COLLATE "C";
+DROP INDEX IF EXISTS resource_storage_key_c_idx;
@@ -0,0 +1,5 @@
+-- liquibase formatted sql
+-- changeset genrietta:delete-jobs-lease1
+
+ALTER TABLE "delete_jobs" ADD COLUMN IF NOT EXISTS owner VARCHAR(36);
+ALTER TABLE "delete_jobs" ADD COLUMN IF NOT EXISTS heartbeat_at TIMESTAMP WITH TIME ZONE;
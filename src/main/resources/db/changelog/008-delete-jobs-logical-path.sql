@@ -0,0 +1,6 @@
+-- liquibase formatted sql
+-- changeset genrietta:delete-jobs-logical-path1
+
+UPDATE "delete_jobs"
+SET path = substring(path FROM position('-files/' IN path) + 7)
+WHERE path LIKE 'user-%-files/%';
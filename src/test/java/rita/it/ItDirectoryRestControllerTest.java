@@ -1,5 +1,6 @@
 package rita.it;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.minio.*;
 import io.minio.errors.ErrorResponseException;
@@ -23,6 +24,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -30,12 +33,19 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import rita.dto.DirectoryResponseDto;
 import rita.dto.MessageDto;
 import rita.repository.Type;
+import rita.repository.ResourceNodeRepository;
 import rita.repository.UserRepository;
 import rita.security.AuthenticationHelper;
 import rita.security.AuthenticationHelperImpl;
 import rita.service.MinioService;
+import rita.service.NamespaceService;
 import rita.service.UserService;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.given;
@@ -43,6 +53,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
 @ActiveProfiles("test")
@@ -60,6 +71,12 @@ public class ItDirectoryRestControllerTest extends AbstractControllerBaseTest {
     @Autowired
     private MinioClient minioClient;
 
+    @Autowired
+    private ResourceNodeRepository resourceNodeRepository;
+
+    @Autowired
+    private NamespaceService namespaceService;
+
     @BeforeEach
     void createBucketIfNotExists() throws Exception {
         boolean exists = minioClient.bucketExists(
@@ -93,6 +110,7 @@ public class ItDirectoryRestControllerTest extends AbstractControllerBaseTest {
                             .build()
             );
         }
+        resourceNodeRepository.deleteAll();
     }
 
 
@@ -137,4 +155,46 @@ public class ItDirectoryRestControllerTest extends AbstractControllerBaseTest {
                         CoreMatchers.is("Папка с таким именем уже существует")));
     }
 
+    @Test
+    @DisplayName("Test paged folder listing functionality")
+    public void givenLargeFolder_whenListPages_thenContinuationTokensWalkWholeFolder() throws Exception {
+
+        given(authenticationHelper.getCurrentUserId()).willReturn(1L);
+        namespaceService.createDirectory(1L, "docs/b/");
+        namespaceService.createDirectory(1L, "docs/a/");
+        createFile("docs/y.txt", 10);
+        createFile("docs/big.bin", 30);
+        createFile("docs/x.txt", 10);
+
+        String token = null;
+        List<String> names = new ArrayList<>();
+        int pages = 0;
+        do {
+            MockHttpServletRequestBuilder request = get("/api/directory")
+                    .with(user("testUser").roles("USER"))
+                    .param("path", "docs/")
+                    .param("sort", "size")
+                    .param("order", "desc")
+                    .param("limit", "2");
+            if (token != null) {
+                request.param("continuationToken", token);
+            }
+            MvcResult result = mockMvc.perform(request)
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.header().string("X-Total-Count", "5"))
+                    .andReturn();
+            JsonNode page = new ObjectMapper().readTree(result.getResponse().getContentAsString());
+            page.forEach(resource -> names.add(resource.get("name").asText()));
+            token = result.getResponse().getHeader("X-Continuation-Token");
+            pages++;
+        } while (token != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(names).containsExactly("a/", "b/", "big.bin", "x.txt", "y.txt");
+    }
+
+    private void createFile(String path, long size) {
+        namespaceService.createFile(1L, path, namespaceService.newStorageKey(1L), size, "etag",
+                "text/plain", Instant.now());
+    }
 }
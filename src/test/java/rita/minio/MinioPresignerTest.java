@@ -0,0 +1,41 @@
+package rita.minio;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MinioPresignerTest {
+
+    private final MinioProperties properties = new MinioProperties();
+
+    private MinioPresigner testMinioPresigner;
+
+    @BeforeEach
+    void setUp() {
+        properties.setUrl("http://localhost:9000");
+        properties.setAccessKey("access");
+        properties.setSecretKey("secret-key");
+        testMinioPresigner = new MinioPresigner(properties);
+    }
+
+    @Test
+    @DisplayName("Test presign upload form functionality")
+    public void givenObject_whenPresignUpload_thenPolicyLimitsKeyAndAllowsContentType() {
+        //when
+        Map<String, String> fields = testMinioPresigner.presignUpload("user-1-objects/1", "text/plain");
+
+        //then
+        String policy = new String(Base64.getDecoder().decode(fields.get("policy")), StandardCharsets.UTF_8);
+        assertThat(fields).containsEntry("key", "user-1-objects/1");
+        assertThat(fields).containsEntry("Content-Type", "text/plain");
+        assertThat(policy).contains("[\"eq\",\"$key\",\"user-1-objects/1\"]");
+        assertThat(policy).contains("[\"starts-with\",\"$Content-Type\",\"\"]");
+        assertThat(policy).contains("content-length-range");
+    }
+}
@@ -21,6 +21,7 @@ import rita.service.MinioService;
 
 import java.util.List;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
@@ -52,6 +53,7 @@ class DirectoryControllerTest {
         this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac)
             .apply(springSecurity())
             .build();
+        when(minioService.listingEtag(any())).thenReturn("listing-etag");
     }
 
     @Test
@@ -63,7 +65,8 @@ class DirectoryControllerTest {
         );
 
         // Исправлено: сервис возвращает List<ResourceResponseDto>, а не ResponseEntity
-        when(minioService.showAllFilesFromFolder(testPath)).thenReturn(List.of(file));
+        when(minioService.showAllFilesFromFolder(testPath, "name", "asc", null, null))
+            .thenReturn(new MinioService.ListingPage(List.of(file), 1, null));
 
         mockMvc.perform(
                 get(DIRECTORY_API)
@@ -73,9 +76,55 @@ class DirectoryControllerTest {
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON))
             .andExpect(jsonPath("$[0].name").value("file.txt"))
-            .andExpect(jsonPath("$[0].size").value(1024L));
+            .andExpect(jsonPath("$[0].size").value(1024L))
+            .andExpect(header().string("X-Total-Count", "1"))
+            .andExpect(header().string("ETag", "\"listing-etag\""));
 
-        verify(minioService, times(1)).showAllFilesFromFolder(testPath);
+        verify(minioService, times(1)).showAllFilesFromFolder(testPath, "name", "asc", null, null);
+    }
+
+    @Test
+    void showAllFilesFromFolder_Sorted() throws Exception {
+        final String testPath = "documents/";
+
+        when(minioService.showAllFilesFromFolder(testPath, "size", "desc", null, null))
+            .thenReturn(new MinioService.ListingPage(List.of(
+                new ResourceResponseDto(testPath, "big.bin", 2048L, Type.FILE),
+                new ResourceResponseDto(testPath, "small.txt", 16L, Type.FILE)
+            ), 2, null));
+
+        mockMvc.perform(
+                get(DIRECTORY_API)
+                    .param("path", testPath)
+                    .param("sort", "size")
+                    .param("order", "desc")
+            )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].name").value("big.bin"))
+            .andExpect(jsonPath("$[1].name").value("small.txt"))
+            .andExpect(header().string("X-Total-Count", "2"));
+    }
+
+    @Test
+    void showAllFilesFromFolder_Paged() throws Exception {
+        final String testPath = "documents/";
+
+        when(minioService.showAllFilesFromFolder(testPath, "name", "asc", 1, "token-1"))
+            .thenReturn(new MinioService.ListingPage(List.of(
+                new ResourceResponseDto(testPath, "b.txt", 16L, Type.FILE)
+            ), 3, "token-2"));
+
+        mockMvc.perform(
+                get(DIRECTORY_API)
+                    .param("path", testPath)
+                    .param("limit", "1")
+                    .param("continuationToken", "token-1")
+            )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(1))
+            .andExpect(jsonPath("$[0].name").value("b.txt"))
+            .andExpect(header().string("X-Total-Count", "3"))
+            .andExpect(header().string("X-Continuation-Token", "token-2"));
     }
 
     @Test
@@ -83,7 +132,7 @@ class DirectoryControllerTest {
         final String testPath = "non_existent_folder/";
 
         // Исправлено: сервис выбрасывает исключение
-        when(minioService.showAllFilesFromFolder(testPath))
+        when(minioService.showAllFilesFromFolder(testPath, "name", "asc", null, null))
             .thenThrow(new EntityNotFoundException("Папки не существует"));
 
         mockMvc.perform(
@@ -94,7 +143,7 @@ class DirectoryControllerTest {
             .andExpect(status().isNotFound())
             .andExpect(jsonPath("$.message").value("Папки не существует"));
 
-        verify(minioService, times(1)).showAllFilesFromFolder(testPath);
+        verify(minioService, times(1)).showAllFilesFromFolder(testPath, "name", "asc", null, null);
     }
 
     @Test
@@ -106,7 +155,7 @@ class DirectoryControllerTest {
             )
             .andExpect(status().isBadRequest());
 
-        verify(minioService, never()).showAllFilesFromFolder(anyString());
+        verify(minioService, never()).showAllFilesFromFolder(anyString(), anyString(), anyString(), any(), any());
     }
 
     @Test
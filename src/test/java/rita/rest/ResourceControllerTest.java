@@ -7,23 +7,34 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import rita.dto.MessageDto;
 import rita.dto.ResourceResponseDto;
+import rita.exeptions.MinioException;
+import rita.repository.ResourceNodeRepository;
 import rita.repository.Type;
 import rita.service.MinioService;
+import rita.service.NamespaceService;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.time.Instant;
+import java.util.Random;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.matchesPattern;
 import static org.mockito.Mockito.*;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -36,6 +47,10 @@ class ResourceControllerTest {
 
     private static final String RESOURCE_API = "/api/resource";
 
+    private static final Long USER_ID = 42L;
+
+    private static final String STORAGE_KEY = "user-42-objects/6f1c1a52-3a0e-4c57-9d1b-2f1f3f0c9e11";
+
     @Autowired
     private WebApplicationContext wac;
 
@@ -44,11 +59,18 @@ class ResourceControllerTest {
     @MockBean
     private MinioClient minioClient;
 
+    @Autowired
+    private NamespaceService namespaceService;
+
+    @Autowired
+    private ResourceNodeRepository resourceNodeRepository;
+
     @BeforeEach
     void setUp() {
         this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac)
                 .apply(springSecurity())
                 .build();
+        resourceNodeRepository.deleteAll();
     }
 
     private final ResourceResponseDto resource = new ResourceResponseDto(
@@ -63,12 +85,10 @@ class ResourceControllerTest {
         byte[] content = "писька".getBytes();
         InputStream inputStream = new ByteArrayInputStream(content);
 
-        StatObjectResponse mockStat = mock(StatObjectResponse.class);
-
-        when(minioClient.statObject(any(StatObjectArgs.class))).thenReturn(mockStat);
+        createFile("folder/file.txt", content.length);
 
         when(minioClient.getObject(any(GetObjectArgs.class)))
-                .thenAnswer(invocation -> inputStream);
+                .thenAnswer(invocation -> objectResponse(inputStream));
 
 
         final byte[] msg = "писька".getBytes();
@@ -78,17 +98,106 @@ class ResourceControllerTest {
                         .param("path", "folder/file.txt"))
                 .andExpect(status().isOk())
                 .andExpect(content().bytes(content));
+
+        verify(minioClient).getObject(argThat(args -> args.object().equals(STORAGE_KEY)));
+    }
+
+
+    @Test
+    void downloadResource_range() throws Exception {
+        createFile("folder/file.txt", 10);
+
+        when(minioClient.getObject(any(GetObjectArgs.class)))
+                .thenAnswer(invocation -> objectResponse(new ByteArrayInputStream("2345".getBytes())));
+
+        mockMvc.perform(get("/api/resource/download")
+                        .param("path", "folder/file.txt")
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4L))
+                .andExpect(content().bytes("2345".getBytes()));
+
+        verify(minioClient).getObject(argThat(args -> args.offset() == 2L && args.length() == 4L));
+    }
+
+    @Test
+    void downloadResource_malformedContentType() throws Exception {
+        namespaceService.createFile(USER_ID, "folder/file.txt", STORAGE_KEY, 4, "abc", "not a type",
+                Instant.now());
+
+        when(minioClient.getObject(any(GetObjectArgs.class)))
+                .thenAnswer(invocation -> objectResponse(new ByteArrayInputStream("data".getBytes())));
+
+        mockMvc.perform(get("/api/resource/download")
+                        .param("path", "folder/file.txt"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(content().bytes("data".getBytes()));
+    }
+
+    @Test
+    void downloadResource_notModified() throws Exception {
+        createFile("folder/file.txt", 10);
+
+        mockMvc.perform(get("/api/resource/download")
+                        .param("path", "folder/file.txt")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(content().string(""));
+
+        verify(minioClient, never()).getObject(any(GetObjectArgs.class));
+    }
+
+    @Test
+    void downloadResource_rangeNotSatisfiable() throws Exception {
+        createFile("folder/file.txt", 10);
+
+        mockMvc.perform(get("/api/resource/download")
+                        .param("path", "folder/file.txt")
+                        .header(HttpHeaders.RANGE, "bytes=20-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+
+        verify(minioClient, never()).getObject(any(GetObjectArgs.class));
+    }
+
+    @Test
+    void downloadFolder_notFound() throws Exception {
+        mockMvc.perform(get("/api/resource/download")
+                        .param("path", "missing/"))
+                .andExpect(status().isNotFound())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_DISPOSITION));
     }
 
+    @Test
+    void downloadFolder_objectFailsAfterCommit_abortsResponse() throws Exception {
+        byte[] first = new byte[64 * 1024];
+        new Random(1).nextBytes(first);
+        namespaceService.createFile(USER_ID, "folder/a.bin", "user-42-objects/a", first.length, "a",
+                MediaType.APPLICATION_OCTET_STREAM_VALUE, Instant.now());
+        namespaceService.createFile(USER_ID, "folder/b.bin", "user-42-objects/b", 1, "b",
+                MediaType.APPLICATION_OCTET_STREAM_VALUE, Instant.now());
+
+        when(minioClient.getObject(argThat(args -> args != null && args.object().equals("user-42-objects/a"))))
+                .thenAnswer(invocation -> objectResponse(new ByteArrayInputStream(first)));
+        when(minioClient.getObject(argThat(args -> args != null && args.object().equals("user-42-objects/b"))))
+                .thenThrow(createNoSuchKeyException());
+
+        assertThatThrownBy(() -> mockMvc.perform(get("/api/resource/download")
+                        .param("path", "folder/")
+                        .param("level", "0")))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasRootCauseInstanceOf(MinioException.class);
+    }
 
     @Test
     void uploadResource_success() throws Exception {
         MockMultipartFile file = new MockMultipartFile(
                 "object", "file.txt", "text/plain", "test file".getBytes());
 
-
-        when(minioClient.statObject(any(StatObjectArgs.class)))
-                .thenThrow(createNoSuchKeyException());
+        when(minioClient.putObject(any())).thenReturn(mock(ObjectWriteResponse.class));
 
         mockMvc.perform(
                         multipart("/api/resource")
@@ -97,6 +206,9 @@ class ResourceControllerTest {
                 )
                 .andExpect(status().isCreated());
         verify(minioClient, times(1)).putObject(any());
+        verify(minioClient, never()).statObject(any(StatObjectArgs.class));
+        verify(minioClient, never()).listObjects(any(ListObjectsArgs.class));
+        assertThat(namespaceService.find(USER_ID, "folder/file.txt")).isPresent();
     }
 
     @Test
@@ -109,9 +221,7 @@ class ResourceControllerTest {
                 "test file".getBytes()
         );
 
-        StatObjectResponse mockStat = mock(StatObjectResponse.class);
-
-        when(minioClient.statObject(any(StatObjectArgs.class))).thenReturn(mockStat);
+        createFile("folder/file.txt", 10);
 
         mockMvc.perform(
                         multipart("/api/resource")
@@ -120,7 +230,31 @@ class ResourceControllerTest {
                 )
                 .andExpect(status().isConflict())
                 .andExpect(jsonPath("$.message").value("Файл с таким именем уже существует"));
+        verify(minioClient, never()).putObject(any());
+    }
+
+    @Test
+    void uploadResource_partialConflict() throws Exception {
+        MockMultipartFile existing = new MockMultipartFile(
+                "object", "old.txt", MediaType.TEXT_PLAIN_VALUE, "old file".getBytes());
+        MockMultipartFile created = new MockMultipartFile(
+                "object", "new.txt", MediaType.TEXT_PLAIN_VALUE, "new file".getBytes());
 
+        createFile("folder/old.txt", 8);
+        when(minioClient.putObject(any())).thenReturn(mock(ObjectWriteResponse.class));
+
+        mockMvc.perform(
+                        multipart("/api/resource")
+                                .file(existing)
+                                .file(created)
+                                .param("path", "folder/")
+                )
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$[0].name").value("old.txt"))
+                .andExpect(jsonPath("$[0].status").value(409))
+                .andExpect(jsonPath("$[1].name").value("new.txt"))
+                .andExpect(jsonPath("$[1].status").value(201));
+        verify(minioClient, times(1)).putObject(any());
     }
 
 
@@ -129,9 +263,7 @@ class ResourceControllerTest {
         String path = "folder/subfolder/";
         String filename = "subfolder";
 
-        StatObjectResponse mockStat = mock(StatObjectResponse.class);
-
-        when(minioClient.statObject(any(StatObjectArgs.class))).thenReturn(mockStat);
+        namespaceService.createDirectory(USER_ID, path);
 
         mockMvc.perform(
                         get(RESOURCE_API)
@@ -148,9 +280,7 @@ class ResourceControllerTest {
         String path = "folder/file.txt";
         String filename = "file.txt";
 
-        StatObjectResponse mockStat = mock(StatObjectResponse.class);
-
-        when(minioClient.statObject(any(StatObjectArgs.class))).thenReturn(mockStat);
+        createFile(path, 10);
 
         mockMvc.perform(
                         get(RESOURCE_API)
@@ -161,6 +291,20 @@ class ResourceControllerTest {
                 .andExpect(jsonPath("$.name").value("file.txt"));
     }
 
+    @Test
+    void getInfo_not_modified() throws Exception {
+        createFile("folder/file.txt", 10);
+
+        mockMvc.perform(
+                        get(RESOURCE_API)
+                                .param("path", "folder/file.txt")
+                                .header(HttpHeaders.IF_NONE_MATCH, "\"abc\"")
+                )
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(content().string(""));
+    }
+
     @Test
     void deleteResource() {
     }
@@ -170,7 +314,107 @@ class ResourceControllerTest {
     }
 
     @Test
-    void searchResource() {
+    void searchResource() throws Exception {
+        namespaceService.createFile(USER_ID, "docs/Report_2024.txt", STORAGE_KEY, 10, "abc",
+                MediaType.TEXT_PLAIN_VALUE, Instant.now());
+        namespaceService.createFile(USER_ID, "docs/report-2024.txt",
+                "user-42-objects/0c0a8d38-9d4e-4f0e-b7b4-5a3c1f7e2b90", 10, "abd",
+                MediaType.TEXT_PLAIN_VALUE, Instant.now());
+
+        mockMvc.perform(
+                        get(RESOURCE_API + "/search")
+                                .param("query", "report_")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("Report_2024.txt"));
+
+        verify(minioClient, never()).listObjects(any(ListObjectsArgs.class));
+    }
+
+    @Test
+    void searchResource_rankedPagesAndNdjson() throws Exception {
+        createFile("docs/plan.txt", 10);
+        namespaceService.createFile(USER_ID, "plan", "user-42-objects/0c0a8d38-9d4e-4f0e-b7b4-5a3c1f7e2b90",
+                10, "abd", MediaType.TEXT_PLAIN_VALUE, Instant.now());
+        namespaceService.createFile(USER_ID, "docs/airplane", "user-42-objects/9b2e4a0c-1d3f-4e5a-8b6c-7d8e9f0a1b2c",
+                10, "abe", MediaType.TEXT_PLAIN_VALUE, Instant.now());
+
+        MvcResult firstPage = mockMvc.perform(
+                        get(RESOURCE_API + "/search")
+                                .param("query", "plan")
+                                .param("limit", "2")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].name").value("plan"))
+                .andExpect(jsonPath("$[1].name").value("plan.txt"))
+                .andExpect(header().exists("X-Next-Cursor"))
+                .andReturn();
+
+        MvcResult secondPage = mockMvc.perform(
+                        get(RESOURCE_API + "/search")
+                                .param("query", "plan")
+                                .param("limit", "2")
+                                .param("cursor", firstPage.getResponse().getHeader("X-Next-Cursor"))
+                                .accept(MediaType.APPLICATION_NDJSON)
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(secondPage))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(matchesPattern("\\{[^\\n]*\"airplane\"[^\\n]*}\\n")));
+
+        MvcResult streamedPage = mockMvc.perform(
+                        get(RESOURCE_API + "/search")
+                                .param("query", "plan")
+                                .param("limit", "1")
+                                .accept(MediaType.APPLICATION_NDJSON)
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(streamedPage))
+                .andExpect(status().isOk())
+                .andExpect(content().string(matchesPattern(
+                        "\\{[^\\n]*\"plan\"[^\\n]*}\\n\\{\"nextCursor\":\"[^\"]+\"}\\n")));
+    }
+
+    @Test
+    void autocomplete() throws Exception {
+        namespaceService.createDirectory(USER_ID, "Reports/");
+        createFile("Reports/report.txt", 10);
+        namespaceService.createFile(USER_ID, "old/report.txt",
+                "user-42-objects/0c0a8d38-9d4e-4f0e-b7b4-5a3c1f7e2b90", 10, "abd",
+                MediaType.TEXT_PLAIN_VALUE, Instant.now());
+
+        mockMvc.perform(
+                        get(RESOURCE_API + "/autocomplete")
+                                .param("prefix", "REP")
+                )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0]").value("report.txt"))
+                .andExpect(jsonPath("$[1]").value("Reports/"));
+
+        mockMvc.perform(
+                        get(RESOURCE_API + "/autocomplete")
+                                .param("prefix", "rep")
+                                .param("limit", "0")
+                )
+                .andExpect(status().isBadRequest());
+    }
+
+    private GetObjectResponse objectResponse(InputStream body) {
+        return new GetObjectResponse(null, null, null, null, body);
+    }
+
+    private void createFile(String path, long size) {
+        namespaceService.createFile(USER_ID, path, STORAGE_KEY, size, "abc", MediaType.TEXT_PLAIN_VALUE,
+                Instant.now());
     }
 
     private io.minio.errors.ErrorResponseException createNoSuchKeyException() {
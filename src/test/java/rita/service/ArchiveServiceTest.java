@@ -0,0 +1,280 @@
+package rita.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
+import rita.repository.Type;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class ArchiveServiceTest {
+
+    @Mock
+    private MinioClient testMinioClient;
+
+    @Mock
+    private NamespaceService namespaceService;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final ForkJoinPool compressionPool = new ForkJoinPool(2);
+
+    private final MinioProperties properties = new MinioProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ArchiveService testArchiveService;
+
+    @BeforeEach
+    void setUp() {
+        properties.setPrefetchDepth(2);
+        testArchiveService = new ArchiveService(testMinioClient, new NamingService(), namespaceService, properties,
+                executor, compressionPool, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        compressionPool.shutdownNow();
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test write folder archive functionality")
+    public void givenFolderWithFiles_whenWriteFolder_thenZipIsStreamed() {
+        //given
+        String path = "folder/";
+
+        given(namespaceService.tree(1L, path))
+                .willReturn(List.of(
+                        directory("folder/"),
+                        directory("folder/empty/"),
+                        file("folder/file1.txt", "user-1-objects/1", 3L, null),
+                        file("folder/file2.txt", "user-1-objects/2", 3L, null)
+                ).iterator());
+
+        given(testMinioClient.getObject(argThat(args ->
+                args != null && args.object().equals("user-1-objects/1")
+        ))).willReturn(mockResponse("lol"));
+
+        given(testMinioClient.getObject(argThat(args ->
+                args != null && args.object().equals("user-1-objects/2")
+        ))).willReturn(mockResponse("kek"));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //when
+        testArchiveService.writeFolder(1L, path, Deflater.DEFAULT_COMPRESSION, outputStream);
+
+        //then
+        Map<String, String> files = readZip(outputStream.toByteArray());
+        assertThat(files).hasSize(3);
+        assertThat(files).containsEntry("folder/empty/", "");
+        assertThat(files).containsEntry("folder/file1.txt", "lol");
+        assertThat(files).containsEntry("folder/file2.txt", "kek");
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test write empty folder archive functionality")
+    public void givenEmptyFolder_whenWriteFolder_thenZipContainsFolderEntry() {
+        //given
+        String path = "folder/";
+
+        given(namespaceService.tree(1L, path))
+                .willReturn(List.of(directory("folder/")).iterator());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //when
+        testArchiveService.writeFolder(1L, path, Deflater.DEFAULT_COMPRESSION, outputStream);
+
+        //then
+        Map<String, String> files = readZip(outputStream.toByteArray());
+        assertThat(files).containsOnlyKeys("folder/");
+        verify(testMinioClient, never()).getObject(any(GetObjectArgs.class));
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test write folder archive with large streamed entry functionality")
+    public void givenLargeFile_whenWriteFolder_thenEntryIsCompressedInBlocks() {
+        //given
+        String path = "folder/";
+        String text = "строка лога номер 1234567890\n".repeat(20_000);
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        properties.setPrefetchByteBudget(DataSize.ofBytes(0));
+
+        given(namespaceService.tree(1L, path))
+                .willReturn(List.of(file("folder/app.log", "user-1-objects/1", content.length, null)).iterator());
+        given(testMinioClient.getObject(any(GetObjectArgs.class)))
+                .willReturn(mockResponse(text));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //when
+        testArchiveService.writeFolder(1L, path, Deflater.BEST_COMPRESSION, outputStream);
+
+        //then
+        assertThat(outputStream.size()).isLessThan(content.length);
+        Map<String, String> files = readZip(outputStream.toByteArray());
+        assertThat(files).containsEntry("folder/app.log", text);
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test write folder archive stores already compressed files functionality")
+    public void givenJpegAndText_whenWriteFolder_thenJpegIsStored() {
+        //given
+        String path = "folder/";
+
+        given(namespaceService.tree(1L, path))
+                .willReturn(List.of(
+                        file("folder/photo.JPG", "user-1-objects/1", 5L, "image/jpeg"),
+                        file("folder/notes.txt", "user-1-objects/2", 5L, "text/plain")
+                ).iterator());
+        given(testMinioClient.getObject(argThat(args ->
+                args != null && args.object().equals("user-1-objects/1")
+        ))).willReturn(mockResponse("image"));
+        given(testMinioClient.getObject(argThat(args ->
+                args != null && args.object().equals("user-1-objects/2")
+        ))).willReturn(mockResponse("notes"));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //when
+        testArchiveService.writeFolder(1L, path, Deflater.DEFAULT_COMPRESSION, outputStream);
+
+        //then
+        Map<String, Integer> methods = new HashMap<>();
+        try (ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                methods.put(entry.getName(), entry.getMethod());
+            }
+        }
+        assertThat(methods).containsEntry("folder/photo.JPG", ZipEntry.STORED);
+        assertThat(methods).containsEntry("folder/notes.txt", ZipEntry.DEFLATED);
+        assertThat(meterRegistry.counter("archive.entry.bytes", "method", "stored").count()).isEqualTo(5.0);
+        assertThat(meterRegistry.counter("archive.entry.bytes", "method", "deflated").count()).isEqualTo(5.0);
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test streamed stored entries are readable by ZipInputStream functionality")
+    public void givenStreamedJpegAndLevelZero_whenWriteFolder_thenZipInputStreamReadsStoredEntries() {
+        //given
+        String path = "folder/";
+        String photo = "jpeg-bytes".repeat(20_000);
+        properties.setPrefetchByteBudget(DataSize.ofBytes(0));
+
+        given(namespaceService.tree(1L, path))
+                .willReturn(List.of(
+                        file("folder/photo.jpg", "user-1-objects/1", photo.length(), "image/jpeg"),
+                        file("folder/notes.txt", "user-1-objects/2", 5L, "text/plain")
+                ).iterator());
+        given(testMinioClient.getObject(argThat(args ->
+                args != null && args.object().equals("user-1-objects/1")
+        ))).willReturn(mockResponse(photo));
+        given(testMinioClient.getObject(argThat(args ->
+                args != null && args.object().equals("user-1-objects/2")
+        ))).willReturn(mockResponse("notes"));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //when
+        testArchiveService.writeFolder(1L, path, Deflater.NO_COMPRESSION, outputStream);
+
+        //then
+        Map<String, Integer> methods = new HashMap<>();
+        Map<String, String> files = new HashMap<>();
+        try (ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                methods.put(entry.getName(), entry.getMethod());
+                files.put(entry.getName(), new String(zipIn.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertThat(methods).containsEntry("folder/photo.jpg", ZipEntry.STORED);
+        assertThat(methods).containsEntry("folder/notes.txt", ZipEntry.STORED);
+        assertThat(files).containsEntry("folder/photo.jpg", photo);
+        assertThat(files).containsEntry("folder/notes.txt", "notes");
+    }
+
+    @Test
+    @DisplayName("Test compression level selection by content type functionality")
+    public void givenContentTypes_whenCompressionLevel_thenIncompressibleAreStored() {
+        assertThat(ArchiveService.compressionLevel("movie", "video/mp4", 6)).isEqualTo(Deflater.NO_COMPRESSION);
+        assertThat(ArchiveService.compressionLevel("doc", "application/pdf", 6)).isEqualTo(Deflater.NO_COMPRESSION);
+        assertThat(ArchiveService.compressionLevel("logo", "image/svg+xml", 6)).isEqualTo(6);
+        assertThat(ArchiveService.compressionLevel("archive.tar.gz", null, 6)).isEqualTo(Deflater.NO_COMPRESSION);
+        assertThat(ArchiveService.compressionLevel("readme.md", "text/markdown", 6)).isEqualTo(6);
+    }
+
+    private ResourceNode directory(String path) {
+        return ResourceNode.builder()
+                .path(path)
+                .type(Type.DIRECTORY)
+                .build();
+    }
+
+    private ResourceNode file(String path, String storageKey, long size, String contentType) {
+        return ResourceNode.builder()
+                .path(path)
+                .type(Type.FILE)
+                .storageKey(storageKey)
+                .size(size)
+                .contentType(contentType)
+                .build();
+    }
+
+    private GetObjectResponse mockResponse(String text) {
+        return new GetObjectResponse(
+                null, null, null, null,
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))
+        );
+    }
+
+    @SneakyThrows
+    private Map<String, String> readZip(byte[] archive) {
+        Map<String, String> files = new HashMap<>();
+        try (ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                files.put(entry.getName(), new String(zipIn.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,80 @@
+package rita.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import rita.minio.MinioProperties;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class BulkDeleteServiceTest {
+
+    @Mock
+    private MinioClient testMinioClient;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BulkDeleteService testBulkDeleteService;
+
+    @BeforeEach
+    void setUp() {
+        testBulkDeleteService = new BulkDeleteService(testMinioClient, new MinioProperties(), executor, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test bulk delete in batches functionality")
+    public void givenManyObjects_whenRemoveAll_thenObjectsAreRemovedInBatches() {
+        //given
+        List<String> objectNames = IntStream.range(0, 2500)
+                .mapToObj(i -> "user-1-files/folder/file" + i)
+                .toList();
+
+        DeleteError error = mock(DeleteError.class);
+        given(error.objectName()).willReturn("user-1-files/folder/file7");
+        given(error.message()).willReturn("Access Denied");
+
+        given(testMinioClient.removeObjects(any(RemoveObjectsArgs.class)))
+                .willReturn(List.of(new Result<>(error)))
+                .willReturn(List.of());
+
+        //when
+        BulkDeleteService.Report report = testBulkDeleteService.removeAll(objectNames.iterator());
+
+        //then
+        verify(testMinioClient, times(3)).removeObjects(any(RemoveObjectsArgs.class));
+        assertThat(report.deleted()).isEqualTo(2499);
+        assertThat(report.failed()).isEqualTo(1);
+        assertThat(report.errors()).containsExactly("user-1-files/folder/file7: Access Denied");
+        assertThat(meterRegistry.counter("storage.delete.objects", "result", "deleted").count()).isEqualTo(2499.0);
+        assertThat(meterRegistry.counter("storage.delete.objects", "result", "failed").count()).isEqualTo(1.0);
+    }
+}
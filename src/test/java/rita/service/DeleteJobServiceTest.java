@@ -0,0 +1,171 @@
+package rita.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import rita.dto.DeleteJobDto;
+import rita.minio.MinioProperties;
+import rita.repository.DeleteJob;
+import rita.repository.DeleteJobRepository;
+import rita.repository.DeleteJobStatus;
+import rita.security.AuthenticationHelperImpl;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.function.LongConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class DeleteJobServiceTest {
+
+    @Mock
+    private DeleteJobRepository deleteJobRepository;
+
+    @Mock
+    private MinioService minioService;
+
+    @Mock
+    private AuthenticationHelperImpl authenticationHelper;
+
+    @Mock
+    private ExecutorService deleteJobExecutor;
+
+    private DeleteJobService testDeleteJobService;
+
+    @BeforeEach
+    void setUp() {
+        testDeleteJobService = new DeleteJobService(deleteJobRepository, minioService, authenticationHelper,
+                deleteJobExecutor, new MinioProperties());
+    }
+
+    @Test
+    @DisplayName("Test submit delete job functionality")
+    public void givenFolder_whenSubmit_thenJobIsSavedAndScheduled() {
+        //given
+        given(authenticationHelper.getCurrentUserId()).willReturn(1L);
+        given(minioService.resolveExisting("folder/")).willReturn("folder/");
+        given(deleteJobRepository.save(any(DeleteJob.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+        //when
+        DeleteJobDto job = testDeleteJobService.submit("folder/");
+
+        //then
+        assertThat(job.path()).isEqualTo("folder/");
+        assertThat(job.status()).isEqualTo(DeleteJobStatus.PENDING);
+        verify(deleteJobRepository).save(argThat(saved -> testDeleteJobService.nodeId().equals(saved.getOwner())));
+        verify(deleteJobRepository).save(argThat(saved -> "folder/".equals(saved.getPath())));
+        verify(deleteJobExecutor).execute(any(Runnable.class));
+    }
+
+    @Test
+    @DisplayName("Test run delete job functionality")
+    public void givenPendingJob_whenRun_thenOnlyDeletedObjectsAreCountedAsRemoved() {
+        //given
+        DeleteJob job = DeleteJob.builder()
+                .id("job-1")
+                .userId(1L)
+                .path("folder/")
+                .status(DeleteJobStatus.PENDING)
+                .owner(testDeleteJobService.nodeId())
+                .createdAt(Instant.now())
+                .updatedAt(Instant.now())
+                .build();
+        given(deleteJobRepository.findById("job-1")).willReturn(Optional.of(job));
+        given(minioService.countObjects(1L, "folder/")).willReturn(1500L);
+        given(deleteJobRepository.start(eq("job-1"), eq(testDeleteJobService.nodeId()), eq(1500L), any(Instant.class)))
+                .willReturn(1);
+        given(minioService.deleteByPrefix(eq(1L), eq("folder/"), any())).willAnswer(invocation -> {
+            LongConsumer progress = invocation.getArgument(2);
+            progress.accept(1000);
+            progress.accept(1490);
+            return new BulkDeleteService.Report(1490, 10, List.of("a.txt: denied"));
+        });
+
+        //when
+        testDeleteJobService.run("job-1");
+
+        //then
+        String nodeId = testDeleteJobService.nodeId();
+        verify(deleteJobRepository).updateProgress(eq("job-1"), eq(nodeId), eq(1000L), any(Instant.class));
+        verify(deleteJobRepository).updateProgress(eq("job-1"), eq(nodeId), eq(1490L), any(Instant.class));
+        verify(deleteJobRepository).finish(eq("job-1"), eq(nodeId), eq(DeleteJobStatus.FAILED), eq(1490L), eq(10L),
+                eq("a.txt: denied"), any(Instant.class));
+        verify(deleteJobRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Test run job taken over by another node functionality")
+    public void givenJobClaimedByAnotherNodeAfterLoad_whenRun_thenNothingIsDeleted() {
+        //given
+        DeleteJob job = DeleteJob.builder()
+                .id("job-1")
+                .userId(1L)
+                .path("folder/")
+                .status(DeleteJobStatus.RUNNING)
+                .owner(testDeleteJobService.nodeId())
+                .build();
+        given(deleteJobRepository.findById("job-1")).willReturn(Optional.of(job));
+        given(minioService.countObjects(1L, "folder/")).willReturn(10L);
+        given(deleteJobRepository.start(eq("job-1"), eq(testDeleteJobService.nodeId()), eq(10L), any(Instant.class)))
+                .willReturn(0);
+
+        //when
+        testDeleteJobService.run("job-1");
+
+        //then
+        verify(minioService, never()).deleteByPrefix(any(), any(), any());
+        verify(deleteJobRepository, never()).finish(any(), any(), any(), anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Test run job owned by another node functionality")
+    public void givenJobOwnedByAnotherNode_whenRun_thenNothingIsDeleted() {
+        //given
+        DeleteJob job = DeleteJob.builder()
+                .id("job-1")
+                .userId(1L)
+                .path("folder/")
+                .status(DeleteJobStatus.RUNNING)
+                .owner("another-node")
+                .build();
+        given(deleteJobRepository.findById("job-1")).willReturn(Optional.of(job));
+
+        //when
+        testDeleteJobService.run("job-1");
+
+        //then
+        verify(minioService, never()).deleteByPrefix(any(), any(), any());
+        verify(deleteJobRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Test resume stale delete jobs functionality")
+    public void givenStaleJobs_whenResume_thenOnlyClaimedJobsAreScheduled() {
+        //given
+        given(deleteJobRepository.findStaleIds(any(), any(Instant.class))).willReturn(List.of("job-1", "job-2"));
+        given(deleteJobRepository.claim(eq("job-1"), any(), eq(testDeleteJobService.nodeId()),
+                any(Instant.class), any(Instant.class))).willReturn(1);
+        given(deleteJobRepository.claim(eq("job-2"), any(), eq(testDeleteJobService.nodeId()),
+                any(Instant.class), any(Instant.class))).willReturn(0);
+
+        //when
+        testDeleteJobService.resumeUnfinishedJobs();
+
+        //then
+        verify(deleteJobExecutor, times(1)).execute(any(Runnable.class));
+    }
+}
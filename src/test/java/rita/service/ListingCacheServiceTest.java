@@ -0,0 +1,189 @@
+package rita.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import rita.dto.ResourceResponseDto;
+import rita.minio.MinioProperties;
+import rita.repository.Type;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class ListingCacheServiceTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private final MinioProperties properties = new MinioProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // содержимое Redis, с которым работают скрипты: поколения папок и сохранённые листинги
+    private final Map<String, String> generations = new HashMap<>();
+
+    private final Map<String, String> listings = new HashMap<>();
+
+    private ListingCacheService testListingCacheService;
+
+    @BeforeEach
+    void setUp() {
+        testListingCacheService = new ListingCacheService(redisTemplate, new ObjectMapper().findAndRegisterModules(),
+                properties, meterRegistry);
+        testListingCacheService.registerMetrics();
+
+        lenient().when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        lenient().when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(valueOperations.get(anyString())).thenAnswer(invocation ->
+                generations.get(invocation.<String>getArgument(0)));
+        lenient().when(hashOperations.get(anyString(), any())).thenAnswer(invocation ->
+                listings.get(invocation.getArgument(0) + "#" + invocation.getArgument(1)));
+        lenient().when(redisTemplate.execute(eq(ListingCacheService.PUT_SCRIPT), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    List<String> keys = invocation.getArgument(1);
+                    if (!generations.getOrDefault(keys.get(0), "0").equals(invocation.getArgument(2))) {
+                        return 0L;
+                    }
+                    listings.put(keys.get(1) + "#" + invocation.getArgument(3), invocation.getArgument(4));
+                    return 1L;
+                });
+        lenient().when(redisTemplate.execute(eq(ListingCacheService.EVICT_SCRIPT), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    List<String> keys = invocation.getArgument(1);
+                    for (int i = 0; i < keys.size(); i += 2) {
+                        String listing = keys.get(i);
+                        listings.keySet().removeIf(key -> key.startsWith(listing + "#"));
+                        generations.merge(keys.get(i + 1), "1",
+                                (current, one) -> Long.toString(Long.parseLong(current) + 1));
+                    }
+                    return (long) keys.size() / 2;
+                });
+    }
+
+    @Test
+    @DisplayName("Test cached listing round trip functionality")
+    public void givenCachedListing_whenGet_thenPageIsReturnedAndHitIsCounted() {
+        //given
+        MinioService.ListingPage page = page("a.txt");
+
+        //when
+        Optional<MinioService.ListingPage> miss = testListingCacheService.get(1L, "docs/", "name:ASC::");
+        String generation = testListingCacheService.generation(1L, "docs/");
+        testListingCacheService.put(1L, "docs/", "name:ASC::", generation, page);
+        Optional<MinioService.ListingPage> hit = testListingCacheService.get(1L, "docs/", "name:ASC::");
+
+        //then
+        assertThat(miss).isEmpty();
+        assertThat(generation).isEqualTo("0");
+        assertThat(hit).contains(page);
+        assertThat(meterRegistry.counter("listing.cache.requests", "result", "hit").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.counter("listing.cache.requests", "result", "miss").count()).isEqualTo(1.0);
+        assertThat(testListingCacheService.hitRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    @DisplayName("Test listing read before concurrent change functionality")
+    public void givenListingReadBeforeChange_whenPutAfterEviction_thenStaleListingIsNotCached() {
+        //given
+        String generation = testListingCacheService.generation(1L, "docs/");
+
+        //when
+        testListingCacheService.added(1L, "docs/b.txt");
+        testListingCacheService.put(1L, "docs/", "name:ASC::", generation, page("a.txt"));
+        Optional<MinioService.ListingPage> cached = testListingCacheService.get(1L, "docs/", "name:ASC::");
+        String fresh = testListingCacheService.generation(1L, "docs/");
+        testListingCacheService.put(1L, "docs/", "name:ASC::", fresh, page("a.txt", "b.txt"));
+
+        //then
+        assertThat(cached).isEmpty();
+        assertThat(fresh).isEqualTo("1");
+        assertThat(testListingCacheService.get(1L, "docs/", "name:ASC::")).contains(page("a.txt", "b.txt"));
+    }
+
+    @Test
+    @DisplayName("Test precise listing invalidation functionality")
+    public void givenCachedFolders_whenResourcesChange_thenOnlyAffectedFoldersAreEvicted() {
+        //given
+        given(setOperations.members("listings:1"))
+                .willReturn(new HashSet<>(Set.of("", "docs/", "docs/old/", "docs/old/deep/", "music/")));
+
+        //when
+        testListingCacheService.added(1L, "docs/new/file.txt");
+        testListingCacheService.removed(1L, "docs/old/");
+
+        //then
+        verify(redisTemplate).execute(eq(ListingCacheService.EVICT_SCRIPT), eq(List.of(
+                "listing:1:docs/new/", "listing-gen:1:docs/new/",
+                "listing:1:docs/", "listing-gen:1:docs/",
+                "listing:1:", "listing-gen:1:")), any(Object[].class));
+        verify(redisTemplate).execute(eq(ListingCacheService.EVICT_SCRIPT), argThat((List<String> keys) ->
+                keys.size() == 6 && keys.containsAll(List.of(
+                        "listing:1:docs/old/", "listing-gen:1:docs/old/",
+                        "listing:1:docs/old/deep/", "listing-gen:1:docs/old/deep/",
+                        "listing:1:docs/", "listing-gen:1:docs/"))), any(Object[].class));
+        assertThat(generations).doesNotContainKey("listing-gen:1:music/");
+    }
+
+    @Test
+    @DisplayName("Test disabled listing cache functionality")
+    public void givenDisabledCache_whenGetAndPut_thenRedisIsNotUsed() {
+        //given
+        properties.setListingCache(false);
+
+        //when
+        Optional<MinioService.ListingPage> cached = testListingCacheService.get(1L, "docs/", "name:ASC::");
+        String generation = testListingCacheService.generation(1L, "docs/");
+        testListingCacheService.put(1L, "docs/", "name:ASC::", generation, page());
+        testListingCacheService.removed(1L, "docs/");
+
+        //then
+        assertThat(cached).isEmpty();
+        assertThat(generation).isNull();
+        verify(redisTemplate, never()).opsForHash();
+        verify(redisTemplate, never()).execute(eq(ListingCacheService.EVICT_SCRIPT), anyList(), any(Object[].class));
+    }
+
+    private MinioService.ListingPage page(String... names) {
+        List<ResourceResponseDto> files = new ArrayList<>();
+        for (String name : names) {
+            files.add(new ResourceResponseDto("docs/", name, 4L, Type.FILE));
+        }
+        return new MinioService.ListingPage(files, files.size(), null);
+    }
+}
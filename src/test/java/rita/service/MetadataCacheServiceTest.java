@@ -0,0 +1,174 @@
+package rita.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
+import rita.repository.Type;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class MetadataCacheServiceTest {
+
+    @Mock
+    private NamespaceService namespaceService;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    private final MinioProperties properties = new MinioProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Map<Object, Object> shared = new HashMap<>();
+
+    private MetadataCacheService testMetadataCacheService;
+
+    @BeforeEach
+    void setUp() {
+        testMetadataCacheService = new MetadataCacheService(namespaceService, redisTemplate,
+                new ObjectMapper().findAndRegisterModules(), properties, meterRegistry);
+        testMetadataCacheService.registerMetrics();
+        lenient().when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        lenient().when(hashOperations.get(eq("metadata:1"), any())).thenAnswer(invocation ->
+                shared.get(invocation.getArgument(1)));
+        lenient().doAnswer(invocation -> shared.put(invocation.getArgument(1), invocation.getArgument(2)))
+                .when(hashOperations).put(eq("metadata:1"), anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("Test near cache hit functionality")
+    public void givenLookedUpResource_whenFindAgain_thenNoRedisOrDatabaseIsUsed() {
+        //given
+        given(namespaceService.find(1L, "docs/a.txt")).willReturn(Optional.of(file("docs/a.txt")));
+
+        //when
+        Optional<ResourceNode> first = testMetadataCacheService.find(1L, "docs/a.txt");
+        Optional<ResourceNode> second = testMetadataCacheService.find(1L, "docs/a.txt");
+        boolean missing = testMetadataCacheService.exists(1L, "docs/b.txt");
+        boolean missingAgain = testMetadataCacheService.exists(1L, "docs/b.txt");
+
+        //then
+        assertThat(first).isPresent();
+        assertThat(second).containsSame(first.get());
+        assertThat(missing).isFalse();
+        assertThat(missingAgain).isFalse();
+        verify(namespaceService, times(1)).find(1L, "docs/a.txt");
+        verify(namespaceService, times(1)).find(1L, "docs/b.txt");
+        verify(hashOperations, times(1)).get("metadata:1", "docs/a.txt");
+        assertThat(shared).containsEntry("docs/b.txt", "");
+        assertThat(meterRegistry.counter("metadata.cache.requests", "result", "local").count()).isEqualTo(2.0);
+        assertThat(meterRegistry.counter("metadata.cache.requests", "result", "miss").count()).isEqualTo(2.0);
+    }
+
+    @Test
+    @DisplayName("Test shared tier and size bound functionality")
+    public void givenFullNearCache_whenFind_thenEldestIsEvictedAndReadFromRedis() {
+        //given
+        properties.setMetadataCacheSize(1);
+        given(namespaceService.find(1L, "a.txt")).willReturn(Optional.of(file("a.txt")));
+        given(namespaceService.find(1L, "b.txt")).willReturn(Optional.of(file("b.txt")));
+
+        //when
+        testMetadataCacheService.find(1L, "a.txt");
+        testMetadataCacheService.find(1L, "b.txt");
+        Optional<ResourceNode> evicted = testMetadataCacheService.find(1L, "a.txt");
+
+        //then
+        assertThat(evicted).map(ResourceNode::getPath).contains("a.txt");
+        assertThat(testMetadataCacheService.localSize()).isEqualTo(1);
+        verify(namespaceService, times(1)).find(1L, "a.txt");
+        assertThat(meterRegistry.counter("metadata.cache.requests", "result", "redis").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Test cluster-wide invalidation functionality")
+    public void givenCachedFolder_whenRemovedAndMessageReceived_thenSubtreeIsEvicted() {
+        //given
+        given(namespaceService.find(1L, "docs/")).willReturn(Optional.of(folder("docs/")));
+        given(namespaceService.find(1L, "docs/a.txt")).willReturn(Optional.of(file("docs/a.txt")));
+        given(namespaceService.find(1L, "music/")).willReturn(Optional.of(folder("music/")));
+        testMetadataCacheService.find(1L, "docs/");
+        testMetadataCacheService.find(1L, "docs/a.txt");
+        testMetadataCacheService.find(1L, "music/");
+        given(hashOperations.keys("metadata:1"))
+                .willReturn(new LinkedHashSet<Object>(List.of("docs/", "docs/a.txt", "music/")));
+
+        //when
+        testMetadataCacheService.removed(1L, "docs/");
+        testMetadataCacheService.onMessage(new DefaultMessage(MetadataCacheService.CHANNEL.getBytes(),
+                "1:E:music/".getBytes(StandardCharsets.UTF_8)), null);
+
+        //then
+        verify(redisTemplate).convertAndSend(MetadataCacheService.CHANNEL, "1:T:docs/");
+        verify(hashOperations).delete("metadata:1", "docs/", "docs/a.txt");
+        assertThat(testMetadataCacheService.localSize()).isZero();
+    }
+
+    @Test
+    @DisplayName("Test disabled metadata cache functionality")
+    public void givenDisabledCache_whenFindAndRemoved_thenRedisIsNotUsed() {
+        //given
+        properties.setMetadataCache(false);
+        given(namespaceService.find(1L, "a.txt")).willReturn(Optional.of(file("a.txt")));
+
+        //when
+        testMetadataCacheService.find(1L, "a.txt");
+        testMetadataCacheService.find(1L, "a.txt");
+        testMetadataCacheService.removed(1L, "a.txt");
+
+        //then
+        verify(namespaceService, times(2)).find(1L, "a.txt");
+        verify(redisTemplate, never()).opsForHash();
+        verify(redisTemplate, never()).convertAndSend(anyString(), any());
+    }
+
+    private ResourceNode file(String path) {
+        return ResourceNode.builder()
+                .userId(1L)
+                .path(path)
+                .parentPath(NamespaceService.parentOf(path))
+                .name(NamespaceService.nameOf(path))
+                .type(Type.FILE)
+                .size(4L)
+                .build();
+    }
+
+    private ResourceNode folder(String path) {
+        return ResourceNode.builder()
+                .userId(1L)
+                .path(path)
+                .parentPath(NamespaceService.parentOf(path))
+                .name(NamespaceService.nameOf(path))
+                .type(Type.DIRECTORY)
+                .build();
+    }
+}
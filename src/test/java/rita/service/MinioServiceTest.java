@@ -2,34 +2,46 @@ package rita.service;
 
 
 import io.minio.*;
-import io.minio.errors.ErrorResponseException;
-import io.minio.messages.ErrorResponse;
-import io.minio.messages.Item;
+import io.minio.http.Method;
 import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import rita.dto.DirectoryResponseDto;
 import rita.dto.MessageDto;
+import rita.dto.PresignedUploadDto;
 import rita.dto.ResourceResponseDto;
+import rita.exeptions.EntityAlreadyExistsException;
+import rita.exeptions.MinioException;
+import rita.minio.MinioPresigner;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
 import rita.security.AuthenticationHelperImpl;
 
 import javax.persistence.EntityNotFoundException;
+import javax.validation.ValidationException;
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -37,9 +49,12 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 import static rita.repository.Type.DIRECTORY;
+import static rita.repository.Type.FILE;
 
 @ExtendWith(MockitoExtension.class)
 public class MinioServiceTest {
@@ -53,9 +68,45 @@ public class MinioServiceTest {
     @Mock
     private AuthenticationHelperImpl authenticationHelper;
 
+    @Mock
+    private ArchiveService archiveService;
+
+    @Mock
+    private BulkDeleteService bulkDeleteService;
+
+    @Mock
+    private MinioPresigner minioPresigner;
+
+    @Mock
+    private MinioProperties minioProperties;
+
+    @Spy
+    private ExecutorService minioTaskExecutor = Executors.newSingleThreadExecutor();
+
+    @Mock
+    private NamespaceService namespaceService;
+
+    @Mock
+    private SearchIndexService searchIndexService;
+
+    @Mock
+    private ListingCacheService listingCacheService;
+
+    @Mock
+    private MetadataCacheService metadataCacheService;
+
     @InjectMocks
     private MinioService testMinioService;
 
+    @AfterEach
+    void tearDown() {
+        minioTaskExecutor.shutdownNow();
+    }
+
+    private static final String TOKEN = "6f1c1a52-3a0e-4c57-9d1b-2f1f3f0c9e11";
+
+    private static final String STORAGE_KEY = "user-1-objects/" + TOKEN;
+
 
     @Test
     @SneakyThrows
@@ -72,15 +123,17 @@ public class MinioServiceTest {
 
         given(authenticationHelper.getCurrentUserId())
                 .willReturn(testUserId);
+        given(namingService.getNameFromPath(clientPath))
+                .willReturn("folder/");
 
-        given(testMinioClient.statObject(any(StatObjectArgs.class)))
-                .willReturn(Mockito.mock(StatObjectResponse.class));
+        given(metadataCacheService.get(testUserId, clientPath))
+                .willReturn(directory("folder/"));
 
         //when
         ResourceResponseDto response = testMinioService.getInfo(clientPath);
         //then
-        assertThat(response).isNotNull();
-        assertThat(response.equals(dto));
+        assertThat(response).isEqualTo(dto);
+        verify(testMinioClient, never()).statObject(any(StatObjectArgs.class));
 
     }
 
@@ -92,21 +145,11 @@ public class MinioServiceTest {
         String clientPath = "folder/";
         Long testUserId = 1L;
 
-        MessageDto dto = new MessageDto("Ресурс не найден");
-
-        ErrorResponse mockErrorResponse = Mockito.mock(ErrorResponse.class);
-        given(mockErrorResponse.code()).willReturn("NoSuchKey");
-        ErrorResponseException noSuchKeyException = new ErrorResponseException(
-                mockErrorResponse,
-                null,
-                "No such key message"
-        );
-
         given(authenticationHelper.getCurrentUserId())
                 .willReturn(testUserId);
 
-        given(testMinioClient.statObject(any(StatObjectArgs.class)))
-                .willThrow(noSuchKeyException);
+        given(metadataCacheService.get(testUserId, clientPath))
+                .willThrow(new EntityNotFoundException("Ресурс не найден"));
 
         //when + then
         assertThrows(EntityNotFoundException.class, () ->
@@ -116,29 +159,177 @@ public class MinioServiceTest {
         verify(testMinioClient, never()).getObject(any(GetObjectArgs.class));
     }
 
+    @Test
+    @SneakyThrows
+    @DisplayName("Test presign download functionality")
+    public void givenFile_whenPresignDownload_thenSignedUrlIsReturned() {
+        //given
+        String clientPath = "folder/file.txt";
+        Long testUserId = 1L;
+
+        given(authenticationHelper.getCurrentUserId())
+                .willReturn(testUserId);
+        given(namingService.getNameFromPath(clientPath))
+                .willReturn("file.txt");
+        given(metadataCacheService.get(testUserId, clientPath))
+                .willReturn(file(clientPath, STORAGE_KEY));
+        given(minioPresigner.presign(eq(Method.GET), eq(STORAGE_KEY), any()))
+                .willReturn("http://minio/user-files/" + STORAGE_KEY + "?X-Amz-Signature=1");
+
+        //when
+        String url = testMinioService.presignDownload(clientPath);
+
+        //then
+        assertThat(url).startsWith("http://minio/user-files/" + STORAGE_KEY);
+        verify(minioPresigner).presign(eq(Method.GET), eq(STORAGE_KEY),
+                argThat(params -> params.get("response-content-disposition").startsWith("attachment")
+                        && params.get("response-content-disposition").contains("file.txt")));
+        verify(testMinioClient, never()).getObject(any(GetObjectArgs.class));
+    }
+
 
     @Test
-    @DisplayName("Test delete resource functionality")
     @SneakyThrows
-    public void givenVoid_whenDeleteResource_thenMinioClientIsCalled() {
+    @DisplayName("Test presign upload functionality")
+    public void givenNewFile_whenPresignUpload_thenPostFormIsReturned() {
         //given
         String clientPath = "folder/";
         Long testUserId = 1L;
-        Item mockItem = Mockito.mock(Item.class);
-        given(mockItem.objectName()).willReturn("user-1-files/folder/");
 
-        Result<Item> result = new Result<>(mockItem);
+        given(authenticationHelper.getCurrentUserId())
+                .willReturn(testUserId);
+        given(namingService.getNameFromPath("file.txt"))
+                .willReturn("file.txt");
+        given(namespaceService.exists(testUserId, "folder/file.txt"))
+                .willReturn(false);
+        given(namespaceService.newStorageKey(testUserId))
+                .willReturn(STORAGE_KEY);
+        given(minioPresigner.uploadUrl())
+                .willReturn("http://minio/user-files");
+        given(minioPresigner.presignUpload(STORAGE_KEY, "text/plain"))
+                .willReturn(Map.of("key", STORAGE_KEY, "policy", "cG9saWN5", "Content-Type", "text/plain"));
+
+        //when
+        List<PresignedUploadDto> urls = testMinioService.presignUpload(List.of("file.txt"), clientPath);
+
+        //then
+        assertThat(urls).containsExactly(new PresignedUploadDto("file.txt", "http://minio/user-files",
+                Map.of("key", STORAGE_KEY, "policy", "cG9saWN5", "Content-Type", "text/plain"), TOKEN));
+        verify(testMinioClient, never()).putObject(any(PutObjectArgs.class));
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test presign upload conflict functionality")
+    public void givenExistingFile_whenPresignUpload_thenConflict() {
+        //given
+        given(authenticationHelper.getCurrentUserId())
+                .willReturn(1L);
+        given(namingService.getNameFromPath("file.txt"))
+                .willReturn("file.txt");
+        given(namespaceService.exists(1L, "folder/file.txt"))
+                .willReturn(true);
+
+        //when + then
+        assertThrows(EntityAlreadyExistsException.class, () ->
+                testMinioService.presignUpload(List.of("file.txt"), "folder/")
+        );
+
+        verify(minioPresigner, never()).presignUpload(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test confirm oversize upload functionality")
+    public void givenOversizeObject_whenConfirmUpload_thenObjectIsRemovedAndNotRegistered() {
+        //given
+        StatObjectResponse statObject = mock(StatObjectResponse.class);
+        given(statObject.size()).willReturn(DataSize.ofGigabytes(2).toBytes());
+        given(authenticationHelper.getCurrentUserId())
+                .willReturn(1L);
+        given(namingService.getNameFromPath("file.txt"))
+                .willReturn("file.txt");
+        given(namespaceService.storageKey(1L, TOKEN))
+                .willReturn(STORAGE_KEY);
+        given(namespaceService.findByStorageKey(STORAGE_KEY))
+                .willReturn(Optional.empty());
+        given(testMinioClient.statObject(any(StatObjectArgs.class)))
+                .willReturn(statObject);
+        given(minioProperties.getMaxUploadSize())
+                .willReturn(DataSize.ofGigabytes(1));
+
+        //when + then
+        assertThrows(ValidationException.class, () ->
+                testMinioService.confirmUpload(List.of("file.txt"), List.of(TOKEN), "folder/")
+        );
+
+        verify(testMinioClient).removeObject(argThat((RemoveObjectArgs args) -> STORAGE_KEY.equals(args.object())));
+        verify(namespaceService, never()).createFile(any(), any(), any(), anyLong(), any(), any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test confirm upload content type functionality")
+    public void givenUploadedObject_whenConfirmUpload_thenContentTypeIsTakenFromObject() {
+        //given
+        StatObjectResponse statObject = mock(StatObjectResponse.class);
+        given(statObject.size()).willReturn(12L);
+        given(statObject.etag()).willReturn("\"abc\"");
+        given(statObject.contentType()).willReturn("image/png");
+        given(authenticationHelper.getCurrentUserId())
+                .willReturn(1L);
+        given(namingService.getNameFromPath("file.txt"))
+                .willReturn("file.txt");
+        given(namespaceService.storageKey(1L, TOKEN))
+                .willReturn(STORAGE_KEY);
+        given(namespaceService.findByStorageKey(STORAGE_KEY))
+                .willReturn(Optional.empty());
+        given(testMinioClient.statObject(any(StatObjectArgs.class)))
+                .willReturn(statObject);
+        given(minioProperties.getMaxUploadSize())
+                .willReturn(DataSize.ofGigabytes(1));
+        given(namespaceService.createFile(eq(1L), eq("folder/file.txt"), eq(STORAGE_KEY), eq(12L), any(),
+                eq("image/png"), any()))
+                .willReturn(file("folder/file.txt", STORAGE_KEY));
+
+        //when
+        testMinioService.confirmUpload(List.of("file.txt"), List.of(TOKEN), "folder/");
 
-        Iterable<Result<Item>> results = List.of(result);
+        //then
+        verify(namespaceService).createFile(eq(1L), eq("folder/file.txt"), eq(STORAGE_KEY), eq(12L), any(),
+                eq("image/png"), any());
+    }
 
-        given(testMinioClient.listObjects(any(ListObjectsArgs.class)))
-                .willReturn(results);
+
+    @Test
+    @DisplayName("Test delete resource functionality")
+    @SneakyThrows
+    public void givenVoid_whenDeleteResource_thenMinioClientIsCalled() {
+        //given
+        String clientPath = "folder/";
+        Long testUserId = 1L;
 
         given(authenticationHelper.getCurrentUserId())
                 .willReturn(testUserId);
+        given(namespaceService.get(testUserId, clientPath))
+                .willReturn(directory(clientPath));
+        given(namespaceService.storageKeys(testUserId, clientPath))
+                .willReturn(List.of("user-1-files/folder/", STORAGE_KEY).iterator());
+
+        List<String> removed = new ArrayList<>();
+        given(bulkDeleteService.removeAll(any(), any())).willAnswer(invocation -> {
+            Iterator<String> objectNames = invocation.getArgument(0);
+            objectNames.forEachRemaining(removed::add);
+            return new BulkDeleteService.Report(removed.size(), 0, List.of());
+        });
         //when + then
         testMinioService.deleteResource(clientPath);
-        verify(testMinioClient, times(1)).removeObject(any(RemoveObjectArgs.class));
+        assertThat(removed).containsExactly("user-1-files/folder/", STORAGE_KEY);
+        verify(namespaceService).deleteTree(testUserId, clientPath);
+        verify(searchIndexService).removed(testUserId, clientPath);
+        verify(listingCacheService).removed(testUserId, clientPath);
+        verify(metadataCacheService).removed(testUserId, clientPath);
+        verify(testMinioClient, never()).removeObject(any(RemoveObjectArgs.class));
     }
 
     @Test
@@ -149,18 +340,98 @@ public class MinioServiceTest {
         String clientPath = "folder/";
         Long testUserId = 1L;
 
-        given(testMinioClient.listObjects(any(ListObjectsArgs.class)))
-                .willReturn(Collections.emptyList());
-
         given(authenticationHelper.getCurrentUserId())
                 .willReturn(testUserId);
 
+        given(namespaceService.get(testUserId, clientPath))
+                .willThrow(new EntityNotFoundException("Ресурс не найден"));
+
         //when + then
         assertThrows(EntityNotFoundException.class, () ->
                 testMinioService.deleteResource(clientPath)
         );
 
-        verify(testMinioClient, never()).removeObject(any(RemoveObjectArgs.class));
+        verify(bulkDeleteService, never()).removeAll(any(), any());
+        verify(namespaceService, never()).deleteTree(any(), any());
+    }
+
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test move folder functionality")
+    public void givenFolder_whenMoveOrRenameResource_thenOnlyMetadataIsUpdated() {
+        //given
+        given(authenticationHelper.getCurrentUserId()).willReturn(1L);
+        given(namingService.getNameFromPath("new/")).willReturn("new/");
+        given(namingService.getNameFromPath("user-1-files/new/")).willReturn("new/");
+        given(namingService.getParentFolder("user-1-files/new/")).willReturn("new/");
+        given(namespaceService.move(1L, "old/", "new/")).willReturn(directory("old/"));
+
+        //when
+        ResourceResponseDto response = testMinioService.moveOrRenameResource("old/", "new/");
+
+        //then
+        assertThat(response).isEqualTo(new ResourceResponseDto("new/", "new/", null, DIRECTORY));
+        verify(searchIndexService).moved(1L, "old/", "new/");
+        verify(listingCacheService).moved(1L, "old/", "new/");
+        verify(metadataCacheService).moved(1L, "old/", "new/");
+        verify(testMinioClient, never()).copyObject(any(CopyObjectArgs.class));
+        verify(bulkDeleteService, never()).removeAll(any());
+    }
+
+    @Test
+    @DisplayName("Test folder listing functionality")
+    public void givenNonEmptyFolder_whenShowAllFilesFromFolder_thenExistenceIsNotCheckedSeparately() {
+        //given
+        given(authenticationHelper.getCurrentUserId()).willReturn(1L);
+        given(namespaceService.children(eq(1L), eq("docs/"), any(Sort.class)))
+                .willReturn(List.of(file("docs/a.txt", STORAGE_KEY)));
+        given(namingService.getParentFolder("user-1-files/docs/")).willReturn("docs/");
+        given(namingService.getNameFromPath("docs/a.txt")).willReturn("a.txt");
+
+        //when
+        MinioService.ListingPage page = testMinioService.showAllFilesFromFolder("docs/", "name", "asc", null, null);
+
+        //then
+        assertThat(page.total()).isEqualTo(1);
+        assertThat(page.resources()).extracting(ResourceResponseDto::getName).containsExactly("a.txt");
+        verify(metadataCacheService, never()).exists(any(), any());
+    }
+
+    @Test
+    @DisplayName("Test empty and missing folder listing functionality")
+    public void givenEmptyListing_whenShowAllFilesFromFolder_thenMissingFolderIsNotFound() {
+        //given
+        given(authenticationHelper.getCurrentUserId()).willReturn(1L);
+        given(metadataCacheService.exists(1L, "empty/")).willReturn(true);
+        given(metadataCacheService.exists(1L, "missing/")).willReturn(false);
+
+        //when
+        MinioService.ListingPage page = testMinioService.showAllFilesFromFolder("empty/", "name", "asc", 2, null);
+
+        //then
+        assertThat(page.resources()).isEmpty();
+        assertThat(page.total()).isZero();
+        verify(namespaceService, never()).countChildren(any(), any());
+        assertThrows(EntityNotFoundException.class, () ->
+                testMinioService.showAllFilesFromFolder("missing/", "name", "asc", null, null)
+        );
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test move folder into itself functionality")
+    public void givenFolderInsideItself_whenMoveOrRenameResource_thenValidationException() {
+        //given
+        given(authenticationHelper.getCurrentUserId()).willReturn(1L);
+        given(namingService.getNameFromPath("old/inner/")).willReturn("inner/");
+
+        //when + then
+        assertThrows(ValidationException.class, () ->
+                testMinioService.moveOrRenameResource("old/", "old/inner/")
+        );
+
+        verify(namespaceService, never()).move(any(), any(), any());
     }
 
 
@@ -184,8 +455,8 @@ public class MinioServiceTest {
         given(authenticationHelper.getCurrentUserId())
                 .willReturn(testUserId);
 
-        given(namingService.getNameFromPath(anyString()))
-                .willReturn("file.txt");
+        given(metadataCacheService.get(testUserId, clientPath))
+                .willReturn(file(clientPath, STORAGE_KEY));
 
         //when
         InputStreamResource inputStreamResource = testMinioService.downloadResource(clientPath);
@@ -196,7 +467,25 @@ public class MinioServiceTest {
         byte[] actualContent = inputStreamResource.getInputStream().readAllBytes();
         assertThat(actualContent).isEqualTo(content);
 
-        verify(testMinioClient).getObject(any(GetObjectArgs.class));
+        verify(testMinioClient).getObject(argThat(args -> args.object().equals(STORAGE_KEY)));
+    }
+
+    private ResourceNode file(String path, String storageKey) {
+        return ResourceNode.builder()
+                .userId(1L)
+                .path(path)
+                .type(FILE)
+                .storageKey(storageKey)
+                .size(12L)
+                .build();
+    }
+
+    private ResourceNode directory(String path) {
+        return ResourceNode.builder()
+                .userId(1L)
+                .path(path)
+                .type(DIRECTORY)
+                .build();
     }
 
 //    @Test
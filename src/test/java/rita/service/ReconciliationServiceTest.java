@@ -0,0 +1,163 @@
+package rita.service;
+
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.Result;
+import io.minio.StatObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.ErrorResponse;
+import io.minio.messages.Item;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
+import rita.repository.ResourceNodeRepository;
+import rita.repository.Type;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class ReconciliationServiceTest {
+
+    @Mock
+    private MinioClient testMinioClient;
+
+    @Mock
+    private NamespaceService namespaceService;
+
+    @Mock
+    private ResourceNodeRepository resourceNodeRepository;
+
+    @Mock
+    private BulkDeleteService bulkDeleteService;
+
+    @Mock
+    private SearchIndexService searchIndexService;
+
+    @Mock
+    private ListingCacheService listingCacheService;
+
+    @Mock
+    private MetadataCacheService metadataCacheService;
+
+    private ReconciliationService testReconciliationService;
+
+    @BeforeEach
+    void setUp() {
+        testReconciliationService = new ReconciliationService(testMinioClient, namespaceService,
+                resourceNodeRepository, bulkDeleteService, searchIndexService, listingCacheService,
+                metadataCacheService, new MinioProperties());
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test reconcile namespace with bucket functionality")
+    public void givenDrift_whenReconcile_thenNamespaceAndBucketAreRepaired() {
+        //given
+        ZonedDateTime old = ZonedDateTime.now(ZoneOffset.UTC).minusDays(2);
+        Item legacy = mockItem("user-1-files/old.txt");
+        given(legacy.size()).willReturn(4L);
+        given(legacy.etag()).willReturn("\"e\"");
+        given(legacy.lastModified()).willReturn(old);
+        Item known = mockItem("user-1-objects/a");
+        Item orphan = mockItem("user-1-objects/b");
+        given(orphan.lastModified()).willReturn(old);
+        Item fresh = mockItem("user-1-objects/c");
+        given(fresh.lastModified()).willReturn(ZonedDateTime.now(ZoneOffset.UTC));
+
+        given(testMinioClient.listObjects(any(ListObjectsArgs.class))).willReturn(List.of(
+                new Result<>(legacy), new Result<>(known), new Result<>(orphan), new Result<>(fresh)));
+
+        ResourceNode missing = node(2L, "user-1-objects/z");
+        given(namespaceService.objectNodes())
+                .willReturn(List.of(node(1L, "user-1-objects/a"), missing).iterator());
+        given(resourceNodeRepository.findByStorageKeyIn(any())).willReturn(List.of());
+        given(testMinioClient.statObject(
+                argThat((StatObjectArgs args) -> args.object().equals("user-1-objects/z"))))
+                .willThrow(new ErrorResponseException(
+                        new ErrorResponse("NoSuchKey", "The specified key does not exist.", "user-files",
+                                "user-1-objects/z", null, null, null),
+                        null, null));
+
+        List<String> removed = new ArrayList<>();
+        given(bulkDeleteService.removeAll(any())).willAnswer(invocation -> {
+            Iterator<String> objectNames = invocation.getArgument(0);
+            objectNames.forEachRemaining(removed::add);
+            return new BulkDeleteService.Report(removed.size(), 0, List.of());
+        });
+
+        //when
+        ReconciliationService.Report report = testReconciliationService.reconcile();
+
+        //then
+        assertThat(report).isEqualTo(new ReconciliationService.Report(1, 1, 1));
+        verify(namespaceService).createFile(eq(1L), eq("old.txt"), eq("user-1-files/old.txt"), eq(4L),
+                eq("e"), eq(null), eq(old.toInstant()));
+        verify(namespaceService).forgetObject(missing);
+        verify(searchIndexService, times(2)).invalidate(1L);
+        verify(listingCacheService, times(2)).invalidate(1L);
+        verify(metadataCacheService, times(2)).invalidate(1L);
+        assertThat(removed).containsExactly("user-1-objects/b");
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test reconcile consistent namespace functionality")
+    public void givenNoDrift_whenReconcile_thenNothingChanges() {
+        //given
+        Item known = mockItem("user-1-objects/a");
+        given(testMinioClient.listObjects(any(ListObjectsArgs.class))).willReturn(List.of(new Result<>(known)));
+        given(namespaceService.objectNodes()).willReturn(List.of(node(1L, "user-1-objects/a")).iterator());
+
+        //when
+        ReconciliationService.Report report = testReconciliationService.reconcile();
+
+        //then
+        assertThat(report).isEqualTo(new ReconciliationService.Report(0, 0, 0));
+        verify(testMinioClient, never()).statObject(any(StatObjectArgs.class));
+        verify(namespaceService, never()).forgetObject(any());
+    }
+
+    @Test
+    @DisplayName("Test key order matches bucket listing functionality")
+    public void givenNonAsciiKeys_whenCompareKeys_thenUtf8ByteOrderIsUsed() {
+        assertThat(ReconciliationService.compareKeys("user-1-objects/Ａ", "user-1-objects/😀"))
+                .isNegative();
+        assertThat(ReconciliationService.compareKeys("user-1-files/a", "user-1-objects/a")).isNegative();
+        assertThat(ReconciliationService.compareKeys("user-1-objects/a", "user-1-objects/a")).isZero();
+    }
+
+    private Item mockItem(String objectName) {
+        Item item = mock(Item.class);
+        given(item.objectName()).willReturn(objectName);
+        return item;
+    }
+
+    private ResourceNode node(Long id, String storageKey) {
+        return ResourceNode.builder()
+                .id(id)
+                .userId(1L)
+                .type(Type.FILE)
+                .storageKey(storageKey)
+                .build();
+    }
+}
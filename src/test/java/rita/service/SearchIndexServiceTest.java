@@ -0,0 +1,225 @@
+package rita.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+import rita.minio.MinioProperties;
+import rita.repository.ResourceNode;
+import rita.repository.Type;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class SearchIndexServiceTest {
+
+    @Mock
+    private NamespaceService namespaceService;
+
+    private final MinioProperties properties = new MinioProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SearchIndexService testSearchIndexService;
+
+    @BeforeEach
+    void setUp() {
+        properties.setSearchIndex(true);
+        testSearchIndexService = new SearchIndexService(namespaceService, properties, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Test lazy index build and hit functionality")
+    public void givenFirstSearch_whenSearch_thenIndexIsBuiltOnceAndReused() {
+        //given
+        given(namespaceService.tree(1L, "")).willReturn(List.of(
+                directory("docs/"),
+                file("docs/Report-2024.txt", 10L),
+                file("docs/notes.txt", 5L)
+        ).iterator());
+
+        //when
+        List<ResourceNode> first = search(1L, "REPORT").orElseThrow();
+        List<ResourceNode> second = search(1L, "no").orElseThrow();
+
+        //then
+        assertThat(first).extracting(ResourceNode::getPath).containsExactly("docs/Report-2024.txt");
+        assertThat(first.get(0).getSize()).isEqualTo(10L);
+        assertThat(second).extracting(ResourceNode::getPath).containsExactly("docs/notes.txt");
+        verify(namespaceService, times(1)).tree(1L, "");
+        assertThat(meterRegistry.counter("search.index.requests", "result", "miss").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.counter("search.index.requests", "result", "hit").count()).isEqualTo(1.0);
+        assertThat(testSearchIndexService.bytes()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Test incremental index update functionality")
+    public void givenLoadedIndex_whenResourcesChange_thenSearchSeesChanges() {
+        //given
+        given(namespaceService.tree(1L, "")).willReturn(List.of(file("docs/plan.txt", 1L)).iterator());
+        search(1L, "plan");
+
+        //when
+        testSearchIndexService.added(1L, file("music/rock/plan-b.mp3", 7L));
+        testSearchIndexService.moved(1L, "docs/", "archive/docs/");
+        testSearchIndexService.removed(1L, "music/");
+
+        //then
+        assertThat(search(1L, "plan").orElseThrow())
+                .extracting(ResourceNode::getPath)
+                .containsExactly("archive/docs/plan.txt");
+        assertThat(search(1L, "docs").orElseThrow())
+                .extracting(ResourceNode::getPath, ResourceNode::getType)
+                .containsExactly(tuple("archive/docs/", Type.DIRECTORY));
+        verify(namespaceService, times(1)).tree(1L, "");
+    }
+
+    @Test
+    @DisplayName("Test ranked search with cursor functionality")
+    public void givenMatchesOfEveryRank_whenSearchPages_thenExactAndPrefixMatchesComeFirst() {
+        //given
+        given(namespaceService.tree(1L, "")).willReturn(List.of(
+                file("a/my-plan.txt", 1L),
+                file("b/plan", 1L),
+                file("c/plan.txt", 1L),
+                file("a/plan", 1L),
+                file("d/airplane", 1L)
+        ).iterator());
+
+        //when
+        List<ResourceNode> first = testSearchIndexService.search(1L, "Plan", SearchCursor.FIRST, 3).orElseThrow();
+        ResourceNode last = first.get(first.size() - 1);
+        SearchCursor cursor = new SearchCursor(SearchCursor.rankOf(last.getName(), "plan"), last.getPath());
+        List<ResourceNode> second = testSearchIndexService.search(1L, "Plan", cursor, 3).orElseThrow();
+
+        //then
+        assertThat(first).extracting(ResourceNode::getPath).containsExactly("a/plan", "b/plan", "c/plan.txt");
+        assertThat(second).extracting(ResourceNode::getPath).containsExactly("a/my-plan.txt", "d/airplane");
+    }
+
+    @Test
+    @DisplayName("Test prefix autocomplete functionality")
+    public void givenLoadedIndex_whenComplete_thenDistinctNamesStartingWithPrefixAreReturnedInOrder() {
+        //given
+        given(namespaceService.tree(1L, "")).willReturn(List.of(
+                directory("Reports/"),
+                file("Reports/report.txt", 1L),
+                file("old/report.txt", 1L),
+                file("old/Report-2023.txt", 1L),
+                file("readme.md", 1L)
+        ).iterator());
+
+        //when
+        List<String> all = testSearchIndexService.complete(1L, "REP", 10).orElseThrow();
+        List<String> limited = testSearchIndexService.complete(1L, "re", 2).orElseThrow();
+        testSearchIndexService.removed(1L, "old/");
+        testSearchIndexService.moved(1L, "readme.md", "report.md");
+        List<String> updated = testSearchIndexService.complete(1L, "repo", 10).orElseThrow();
+
+        //then
+        assertThat(all).containsExactly("Report-2023.txt", "report.txt", "Reports/");
+        assertThat(limited).containsExactly("readme.md", "Report-2023.txt");
+        assertThat(updated).containsExactly("report.md", "report.txt", "Reports/");
+        assertThat(testSearchIndexService.complete(1L, "x", 10).orElseThrow()).isEmpty();
+        verify(namespaceService, times(1)).tree(1L, "");
+    }
+
+    @Test
+    @DisplayName("Test index eviction under memory budget functionality")
+    public void givenBudgetForOneIndex_whenSecondUserSearches_thenEldestIndexIsEvicted() {
+        //given
+        properties.setSearchIndexBudget(DataSize.ofBytes(2500));
+        given(namespaceService.tree(1L, "")).willReturn(List.of(file("a.txt", 1L)).iterator());
+        given(namespaceService.tree(2L, "")).willReturn(List.of(file("b.txt", 1L), file("c.txt", 1L)).iterator());
+
+        //when
+        search(1L, "txt");
+        search(2L, "txt");
+
+        //then
+        assertThat(testSearchIndexService.users()).isEqualTo(1);
+        assertThat(testSearchIndexService.bytes()).isLessThanOrEqualTo(2500);
+        assertThat(meterRegistry.counter("search.index.evictions").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Test index over budget functionality")
+    public void givenIndexLargerThanBudget_whenSearchTwice_thenDatabaseIsUsedWithoutRebuilding() {
+        //given
+        properties.setSearchIndexBudget(DataSize.ofBytes(100));
+        given(namespaceService.tree(1L, "")).willReturn(List.of(file("a.txt", 1L), file("b.txt", 1L)).iterator());
+
+        //when
+        Optional<List<ResourceNode>> first = search(1L, "txt");
+        Optional<List<ResourceNode>> second = search(1L, "txt");
+
+        //then
+        assertThat(first).isEmpty();
+        assertThat(second).isEmpty();
+        assertThat(testSearchIndexService.users()).isZero();
+        verify(namespaceService, times(1)).tree(1L, "");
+        assertThat(meterRegistry.counter("search.index.requests", "result", "oversized").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Test index expiry functionality")
+    public void givenExpiredIndex_whenSearch_thenIndexIsRebuiltFromNamespace() {
+        //given
+        properties.setSearchIndexTtl(Duration.ZERO);
+        given(namespaceService.tree(1L, ""))
+                .willReturn(List.of(file("plan.txt", 1L)).iterator())
+                .willReturn(List.of(file("plan.txt", 1L), file("plan-b.txt", 1L)).iterator());
+
+        //when
+        List<ResourceNode> first = search(1L, "plan").orElseThrow();
+        List<ResourceNode> second = search(1L, "plan").orElseThrow();
+
+        //then
+        assertThat(first).hasSize(1);
+        assertThat(second).extracting(ResourceNode::getPath).containsExactlyInAnyOrder("plan.txt", "plan-b.txt");
+        verify(namespaceService, times(2)).tree(1L, "");
+    }
+
+    @Test
+    @DisplayName("Test disabled index functionality")
+    public void givenDisabledIndex_whenSearch_thenDatabaseIsUsed() {
+        //given
+        properties.setSearchIndex(false);
+
+        //when + then
+        assertThat(search(1L, "plan")).isEmpty();
+        verify(namespaceService, never()).tree(1L, "");
+    }
+
+    private Optional<List<ResourceNode>> search(Long userId, String query) {
+        return testSearchIndexService.search(userId, query, SearchCursor.FIRST, 100);
+    }
+
+    private ResourceNode file(String path, Long size) {
+        return ResourceNode.builder()
+                .path(path)
+                .type(Type.FILE)
+                .size(size)
+                .build();
+    }
+
+    private ResourceNode directory(String path) {
+        return ResourceNode.builder()
+                .path(path)
+                .type(Type.DIRECTORY)
+                .build();
+    }
+}
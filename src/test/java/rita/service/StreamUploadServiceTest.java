@@ -0,0 +1,166 @@
+package rita.service;
+
+import io.minio.messages.Part;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.util.unit.DataSize;
+import rita.dto.ResourceResponseDto;
+import rita.exeptions.MinioException;
+import rita.minio.MinioProperties;
+import rita.minio.MultipartMinioClient;
+import rita.security.AuthenticationHelperImpl;
+
+import javax.validation.ValidationException;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static rita.repository.Type.FILE;
+
+@ExtendWith(MockitoExtension.class)
+public class StreamUploadServiceTest {
+
+    private static final String OBJECT = "user-1-objects/6f1c1a52-3a0e-4c57-9d1b-2f1f3f0c9e11";
+
+    @Mock
+    private ObjectProvider<MultipartMinioClient> multipartMinioClientProvider;
+
+    @Mock
+    private MultipartMinioClient multipartMinioClient;
+
+    @Mock
+    private MinioService minioService;
+
+    @Mock
+    private AuthenticationHelperImpl authenticationHelper;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final MinioProperties properties = new MinioProperties();
+
+    private StreamUploadService testStreamUploadService;
+
+    @BeforeEach
+    @SneakyThrows
+    void setUp() {
+        properties.setUploadChunkSize(DataSize.ofMegabytes(5));
+        properties.setUploadParallelism(2);
+        testStreamUploadService = new StreamUploadService(multipartMinioClientProvider, minioService,
+                authenticationHelper, properties, executor);
+
+        lenient().when(authenticationHelper.getCurrentUserId()).thenReturn(1L);
+        lenient().when(minioService.resolveNewObject("folder/", "movie.mkv", 1L))
+                .thenReturn(new MinioService.NewObject("folder/movie.mkv", OBJECT));
+        lenient().when(multipartMinioClientProvider.getObject()).thenReturn(multipartMinioClient);
+        lenient().when(multipartMinioClient.createMultipartUpload("user-files", OBJECT, "video/x-matroska"))
+                .thenReturn("upload-1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test stream upload of unknown size functionality")
+    public void givenStreamOfUnknownSize_whenUpload_thenPartsAreUploadedAndCompleted() {
+        //given
+        byte[] content = new byte[12 * 1024 * 1024];
+        given(multipartMinioClient.uploadPart(eq("user-files"), eq(OBJECT), eq("upload-1"), anyInt(), any()))
+                .willAnswer(invocation -> "etag-" + invocation.getArgument(3));
+        given(minioService.registerUploaded(1L, "folder/movie.mkv", OBJECT))
+                .willReturn(new ResourceResponseDto("folder/", "movie.mkv", (long) content.length, FILE));
+
+        //when
+        ResourceResponseDto response = testStreamUploadService.upload("folder/", "movie.mkv",
+                "video/x-matroska", -1, new ByteArrayInputStream(content));
+
+        //then
+        assertThat(response.getSize()).isEqualTo(content.length);
+        verify(multipartMinioClient, times(3)).uploadPart(eq("user-files"), eq(OBJECT), eq("upload-1"),
+                anyInt(), any());
+
+        ArgumentCaptor<Part[]> parts = ArgumentCaptor.forClass(Part[].class);
+        verify(multipartMinioClient).completeMultipartUpload(eq("user-files"), eq(OBJECT), eq("upload-1"),
+                parts.capture());
+        assertThat(Arrays.stream(parts.getValue()).map(Part::partNumber)).containsExactly(1, 2, 3);
+        assertThat(Arrays.stream(parts.getValue()).map(Part::etag)).containsExactly("etag-1", "etag-2", "etag-3");
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test stream upload abort on part failure functionality")
+    public void givenFailingPart_whenUpload_thenUploadIsAborted() {
+        //given
+        given(multipartMinioClient.uploadPart(eq("user-files"), eq(OBJECT), eq("upload-1"), anyInt(), any()))
+                .willThrow(new IllegalStateException("connection reset"));
+
+        //when + then
+        assertThrows(MinioException.class, () ->
+                testStreamUploadService.upload("folder/", "movie.mkv", "video/x-matroska", 3,
+                        new ByteArrayInputStream(new byte[]{1, 2, 3}))
+        );
+
+        verify(multipartMinioClient).abortMultipartUpload("user-files", OBJECT, "upload-1");
+        verify(multipartMinioClient, never()).completeMultipartUpload(any(), any(), any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test stream upload over size limit functionality")
+    public void givenStreamOverLimit_whenUpload_thenUploadIsAbortedOnceLimitIsPassed() {
+        //given
+        properties.setMaxUploadSize(DataSize.ofMegabytes(6));
+        byte[] content = new byte[12 * 1024 * 1024];
+        given(multipartMinioClient.uploadPart(eq("user-files"), eq(OBJECT), eq("upload-1"), anyInt(), any()))
+                .willReturn("etag-1");
+
+        //when + then
+        assertThrows(ValidationException.class, () ->
+                testStreamUploadService.upload("folder/", "movie.mkv", "video/x-matroska", -1,
+                        new ByteArrayInputStream(content))
+        );
+
+        verify(multipartMinioClient, times(1)).uploadPart(eq("user-files"), eq(OBJECT), eq("upload-1"),
+                anyInt(), any());
+        verify(multipartMinioClient).abortMultipartUpload("user-files", OBJECT, "upload-1");
+        verify(multipartMinioClient, never()).completeMultipartUpload(any(), any(), any(), any());
+        verify(minioService, never()).registerUploaded(any(), any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test stream upload with declared length over limit functionality")
+    public void givenContentLengthOverLimit_whenUpload_thenRejectedBeforeUploadStarts() {
+        //given
+        properties.setMaxUploadSize(DataSize.ofMegabytes(6));
+
+        //when + then
+        assertThrows(ValidationException.class, () ->
+                testStreamUploadService.upload("folder/", "movie.mkv", "video/x-matroska",
+                        DataSize.ofMegabytes(7).toBytes(), new ByteArrayInputStream(new byte[0]))
+        );
+
+        verify(multipartMinioClient, never()).createMultipartUpload(any(), any(), any());
+    }
+}
@@ -0,0 +1,166 @@
+package rita.service;
+
+import io.minio.errors.InsufficientDataException;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.util.unit.DataSize;
+import rita.minio.MinioProperties;
+import rita.minio.MultipartMinioClient;
+import rita.security.AuthenticationHelperImpl;
+
+import javax.validation.ValidationException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class UploadSessionServiceTest {
+
+    @Mock
+    private ObjectProvider<MultipartMinioClient> multipartMinioClientProvider;
+
+    @Mock
+    private MultipartMinioClient multipartMinioClient;
+
+    @Mock
+    private MinioService minioService;
+
+    @Mock
+    private AuthenticationHelperImpl authenticationHelper;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    private static final String OBJECT = "user-1-objects/6f1c1a52-3a0e-4c57-9d1b-2f1f3f0c9e11";
+
+    private final MinioProperties properties = new MinioProperties();
+
+    private UploadSessionService testUploadSessionService;
+
+    private final Map<Object, Object> session = Map.of(
+            "userId", "1",
+            "path", "folder/",
+            "name", "movie.mkv",
+            "target", "folder/movie.mkv",
+            "object", OBJECT,
+            "uploadId", "upload-1",
+            "size", "12",
+            "chunkSize", "5"
+    );
+
+    @BeforeEach
+    void setUp() {
+        testUploadSessionService = new UploadSessionService(multipartMinioClientProvider, minioService,
+                authenticationHelper, redisTemplate, properties);
+        lenient().when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        lenient().when(authenticationHelper.getCurrentUserId()).thenReturn(1L);
+        lenient().when(hashOperations.entries("upload-session:s1")).thenReturn(session);
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test upload last chunk functionality")
+    public void givenLastChunk_whenUploadChunk_thenPartIsUploadedAndRemembered() {
+        //given
+        given(redisTemplate.opsForZSet()).willReturn(zSetOperations);
+        given(multipartMinioClientProvider.getObject()).willReturn(multipartMinioClient);
+        given(multipartMinioClient.uploadPart(eq("user-files"), eq(OBJECT),
+                eq("upload-1"), eq(3), any(InputStream.class), eq(2L))).willReturn("etag-3");
+
+        //when
+        testUploadSessionService.uploadChunk("s1", 3, 2, new ByteArrayInputStream(new byte[]{1, 2}));
+
+        //then
+        verify(hashOperations).put("upload-session:s1:parts", "3", "etag-3");
+        verify(zSetOperations).add(eq("upload-sessions"), eq("s1"), anyDouble());
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test upload chunk with wrong size functionality")
+    public void givenWrongChunkSize_whenUploadChunk_thenValidationException() {
+        //when + then
+        assertThrows(ValidationException.class, () ->
+                testUploadSessionService.uploadChunk("s1", 1, 2, new ByteArrayInputStream(new byte[]{1, 2}))
+        );
+
+        verify(multipartMinioClientProvider, never()).getObject();
+        verify(hashOperations, never()).put(anyString(), any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test complete with missing chunks functionality")
+    public void givenMissingChunks_whenComplete_thenValidationException() {
+        //given
+        given(hashOperations.entries("upload-session:s1:parts"))
+                .willReturn(Map.of("1", "etag-1", "3", "etag-3"));
+
+        //when + then
+        assertThrows(ValidationException.class, () ->
+                testUploadSessionService.complete("s1")
+        );
+
+        verify(multipartMinioClientProvider, never()).getObject();
+        verify(minioService, never()).resolveNewObject(anyString(), anyString(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test create oversize session functionality")
+    public void givenSizeOverLimit_whenCreateSession_thenValidationException() {
+        //given
+        properties.setMaxUploadSize(DataSize.ofGigabytes(1));
+
+        //when + then
+        assertThrows(ValidationException.class, () ->
+                testUploadSessionService.createSession("folder/", "movie.mkv",
+                        DataSize.ofGigabytes(3).toBytes(), "video/x-matroska")
+        );
+
+        verify(minioService, never()).resolveNewObject(anyString(), anyString(), any());
+        verify(multipartMinioClientProvider, never()).getObject();
+    }
+
+    @Test
+    @SneakyThrows
+    @DisplayName("Test upload truncated chunk functionality")
+    public void givenTruncatedBody_whenUploadChunk_thenValidationException() {
+        //given
+        given(multipartMinioClientProvider.getObject()).willReturn(multipartMinioClient);
+        given(multipartMinioClient.uploadPart(eq("user-files"), eq(OBJECT), eq("upload-1"), eq(1),
+                any(InputStream.class), eq(5L))).willThrow(new InsufficientDataException("read 2, expected 5"));
+
+        //when + then
+        assertThrows(ValidationException.class, () ->
+                testUploadSessionService.uploadChunk("s1", 1, -1, new ByteArrayInputStream(new byte[]{1, 2}))
+        );
+
+        verify(hashOperations, never()).put(anyString(), any(), any());
+    }
+}